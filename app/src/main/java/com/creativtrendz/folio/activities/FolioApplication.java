@@ -8,6 +8,7 @@ package com.creativtrendz.folio.activities;
 import android.app.Application;
 import android.content.Context;
 import com.creativetrends.folio.app.R;
+import com.creativtrendz.folio.notifications.CheckConnections;
 import org.acra.ACRA;
 import org.acra.ReportingInteractionMode;
 import org.acra.annotation.ReportsCrashes;
@@ -33,6 +34,7 @@ public class FolioApplication extends Application {
         super.onCreate();
 
         ACRA.init(this);
+        CheckConnections.install();
 
     }
 
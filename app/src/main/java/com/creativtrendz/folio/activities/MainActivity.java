@@ -54,6 +54,7 @@ import com.creativetrends.folio.app.R;
 import com.creativtrendz.folio.notifications.FolioNotifications;
 import com.creativtrendz.folio.notifications.FolioReceiver;
 import com.creativtrendz.folio.services.Connectivity;
+import com.creativtrendz.folio.ui.CssInjector;
 import com.creativtrendz.folio.ui.FolioHelpers;
 import com.creativtrendz.folio.ui.FolioInterfaces;
 import com.creativtrendz.folio.ui.FolioWebViewScroll;
@@ -207,11 +208,6 @@ public class MainActivity extends AppCompatActivity implements View.OnLongClickL
         boolean topnews = PreferencesUtility.getInstance(this).getFeed().equals("top_news");
         boolean defaultfeed = PreferencesUtility.getInstance(this).getFeed().equals("default_news");
         boolean mostrecent = PreferencesUtility.getInstance(this).getFeed().equals("most_recent");
-        final boolean fbtheme = PreferencesUtility.getInstance(this).getFreeTheme().equals("facebooktheme");
-        final boolean blacktheme = PreferencesUtility.getInstance(this).getFreeTheme().equals("darktheme");
-        final boolean dracula = PreferencesUtility.getInstance(this).getFreeTheme().equals("draculatheme");
-        final boolean folio = PreferencesUtility.getInstance(this).getFreeTheme().equals("materialtheme");
-        final boolean folioclassic = PreferencesUtility.getInstance(this).getFreeTheme().equals("folioclassic");
 
 
         boolean mCreatingActivity = true;
@@ -243,6 +239,7 @@ public class MainActivity extends AppCompatActivity implements View.OnLongClickL
             PreferenceManager.setDefaultValues(this, R.xml.customize_preferences, true);
             preferences = PreferenceManager.getDefaultSharedPreferences(this);
             trayPreferences = new TrayAppPreferences(getApplicationContext());
+            CssInjector.getInstance(getApplicationContext()).prepare();
             setContentView(R.layout.activity_main);
             Permiso.getInstance().setActivity(this);
             getWindow().setFlags(
@@ -687,34 +684,7 @@ public class MainActivity extends AppCompatActivity implements View.OnLongClickL
                         swipeRefreshLayout.setRefreshing(false);
                         initalizeBookmarks(navigationViewFavs);
                         getUsersShit();
-                        if (fbtheme)
-                            injectDefaultCSS(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("facebooktheme", "facebooktheme"));
-
-                        if (folio)
-                            injectMaterialCSS(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("materialtheme", "materialtheme"));
-
-                        if (folioclassic)
-                            injectClassicCSS(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("folioclassic", "folioclassic"));
-
-                        if (blacktheme)
-                            injectDarkCSS(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("darktheme", "darktheme"));
-
-                        if (dracula)
-                            injectDraculaCSS(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("draculatheme", "draculatheme"));
-
-                        if (isPinkTheme)
-                            injectPinkCSS(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("pinktheme", "pinktheme"));
-
-                        if (isBlueGreyTheme)
-                            injectBGCSS(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("bluegrey", "bluegrey"));
-
-
-                        if (preferences.getBoolean("hide_people", false)) {
-                            injectHide(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("hidepeople", "hidepeople"));
-                        } else {
-                            injectShow(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("showpeople", "showpeople"));
-                        }
-                            injectFbBar(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("showpeople", "showpeople"));
+                        CssInjector.getInstance(getApplicationContext()).injectPage(webView);
 
                         if (url.contains("messages") && preferences.getBoolean("use_messenger", false)) {
                             startActivity(new Intent(MainActivity.this, Messenger.class));
@@ -730,7 +700,7 @@ public class MainActivity extends AppCompatActivity implements View.OnLongClickL
                             }
                         }
                         if (url.contains("sharer") || url.contains("/composer/") || url.contains("throwback_share_source")) {
-                            showFbBar(PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).getString("showpeople", "showpeople"));
+                            CssInjector.getInstance(getApplicationContext()).injectAsset(webView, "showfbar.css");
                             swipeRefreshLayout.setEnabled(false);
                         } else {
                         swipeRefreshLayout.setEnabled(true);
@@ -1364,102 +1334,6 @@ public class MainActivity extends AppCompatActivity implements View.OnLongClickL
     }
 
 
-    private void injectDefaultCSS(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("fbdefault.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception fb) {
-            fb.printStackTrace();
-        }
-    }
-
-    private void injectMaterialCSS(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("foliotheme.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception fb) {
-            fb.printStackTrace();
-        }
-    }
-
-    private void injectClassicCSS(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("folioclassic.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception fb) {
-            fb.printStackTrace();
-        }
-    }
-
-    private void injectDarkCSS(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("black.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception b) {
-            b.printStackTrace();
-        }
-    }
-
-    private void injectDraculaCSS(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("dracula.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception d) {
-            d.printStackTrace();
-        }
-    }
-
-    private void injectPinkCSS(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("pink_theme.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception d) {
-            d.printStackTrace();
-        }
-    }
-
-    private void injectFbBar(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("fb_bar.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception d) {
-            d.printStackTrace();
-        }
-    }
-
-    private void showFbBar(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("showfbar.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception d) {
-            d.printStackTrace();
-        }
-    }
-
     private void injectComposer(String mode) {
         try {
             InputStream inputStream = getAssets().open("composer.css");
@@ -1472,30 +1346,6 @@ public class MainActivity extends AppCompatActivity implements View.OnLongClickL
         }
     }
 
-    private void injectHide(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("hidepeople.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception d) {
-            d.printStackTrace();
-        }
-    }
-
-    private void injectShow(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("showpeople.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception d) {
-            d.printStackTrace();
-        }
-    }
-
     private void injectSelect(String mode) {
         try {
             InputStream inputStream = getAssets().open("selectshit.css");
@@ -1510,19 +1360,6 @@ public class MainActivity extends AppCompatActivity implements View.OnLongClickL
 
 
 
-    private void injectBGCSS(String mode) {
-        try {
-            InputStream inputStream = getAssets().open("blue_grey.css");
-            byte[] buffer = new byte[inputStream.available()];
-            inputStream.read(buffer);
-            inputStream.close();
-            webView.loadUrl("javascript:(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('" + Base64.encodeToString(buffer, 2) + "');" + "parent.appendChild(style)" + "})()");
-        } catch (Exception d) {
-            d.printStackTrace();
-        }
-    }
-
-
     private void getUsersShit() {
         GraphRequest request = GraphRequest.newMeRequest(AccessToken.getCurrentAccessToken(), new GraphRequest.GraphJSONObjectCallback() {
             @Override
@@ -23,6 +23,7 @@ import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.preference.RingtonePreference;
+import android.text.format.Formatter;
 import android.util.Log;
 import android.widget.RemoteViews;
 
@@ -31,7 +32,8 @@ import com.creativtrendz.folio.activities.FolioApplication;
 import com.creativtrendz.folio.activities.QuickFacebook;
 import com.creativtrendz.folio.activities.QuickGoogle;
 import com.creativtrendz.folio.activities.QuickInstagram;
-import com.creativtrendz.folio.notifications.FolioNotifications;
+import com.creativtrendz.folio.notifications.DataBudget;
+import com.creativtrendz.folio.notifications.PollScheduler;
 import com.creativtrendz.folio.preferences.SwitchPreferenceCompat;
 
 import net.grandcentrix.tray.TrayAppPreferences;
@@ -70,17 +72,34 @@ private TrayAppPreferences trayPreferences;
         myPrefListner = new SharedPreferences.OnSharedPreferenceChangeListener() {
             public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
 
-                final Intent intent = new Intent(context, FolioNotifications.class);
-
                 switch (key) {
                     case "interval_pref":
-                        // update Tray Preference before restarting the service
+                        // update Tray Preference before rescheduling
                         trayPreferences.put("interval_pref", Integer.parseInt(preferences.getString("interval_pref", "1800000")));
-                        // restart the service after time interval change
-                        if (prefs.getBoolean("notifications_activated", false)) {
-                            context.stopService(intent);
-                            context.startService(intent);
-                        }
+                        // reschedule the next check after time interval change
+                        reschedule();
+                        break;
+                    case "adaptive_interval":
+                        trayPreferences.put("adaptive_interval", preferences.getBoolean("adaptive_interval", true));
+                        reschedule();
+                        break;
+                    case "interval_min_pref":
+                        trayPreferences.put("interval_min_pref", Integer.parseInt(preferences.getString("interval_min_pref", "300000")));
+                        reschedule();
+                        break;
+                    case "interval_max_pref":
+                        trayPreferences.put("interval_max_pref", Integer.parseInt(preferences.getString("interval_max_pref", "10800000")));
+                        reschedule();
+                        break;
+                    case "budget_bytes_pref":
+                        trayPreferences.put("budget_bytes_pref", Integer.parseInt(preferences.getString("budget_bytes_pref", "5242880")));
+                        reschedule();
+                        updateBudgetUsage();
+                        break;
+                    case "budget_requests_pref":
+                        trayPreferences.put("budget_requests_pref", Integer.parseInt(preferences.getString("budget_requests_pref", "200")));
+                        reschedule();
+                        updateBudgetUsage();
                         break;
                     case "ringtone":
                         trayPreferences.put("ringtone", preferences.getString("ringtone", "content://settings/system/notification_sound"));
@@ -100,29 +119,11 @@ private TrayAppPreferences trayPreferences;
 
                     case "notifications_activated":
                         trayPreferences.put("notifications_activated", preferences.getBoolean("notifications_activated", false));
-                        if (prefs.getBoolean("notifications_activated", false) && preferences.getBoolean("messages_activated", false)) {
-                            context.stopService(intent);
-                            context.startService(intent);
-                        } else //noinspection StatementWithEmptyBody
-                            if (!prefs.getBoolean("notifications_activated", false) && preferences.getBoolean("messages_activated", false)) {
-                                // ignore this case
-                            } else if (prefs.getBoolean("notifications_activated", false) && !preferences.getBoolean("messages_activated", false)) {
-                                context.startService(intent);
-                            } else
-                                context.stopService(intent);
+                        reschedule();
                         break;
                     case "messages_activated":
                         trayPreferences.put("messages_activated", preferences.getBoolean("messages_activated", false));
-                        if (prefs.getBoolean("messages_activated", false) && preferences.getBoolean("notifications_activated", false)) {
-                            context.stopService(intent);
-                            context.startService(intent);
-                        } else //noinspection StatementWithEmptyBody
-                            if (!prefs.getBoolean("messages_activated", false) && preferences.getBoolean("notifications_activated", false)) {
-                                // ignore this case
-                            } else if (prefs.getBoolean("messages_activated", false) && !preferences.getBoolean("notifications_activated", false)) {
-                                context.startService(intent);
-                            } else
-                                context.stopService(intent);
+                        reschedule();
                         break;
                 }
 
@@ -249,6 +250,27 @@ private TrayAppPreferences trayPreferences;
 
         RingtonePreference rpm = (RingtonePreference) findPreference("ringtone_msg");
         rpm.setSummary(getString(R.string.message_sound_description) + name);
+
+        updateBudgetUsage();
+    }
+
+    // today's usage of the data budget for checks on metered networks
+    private void updateBudgetUsage() {
+        final int byteLimit = DataBudget.getByteLimit(context);
+        final int requestLimit = DataBudget.getRequestLimit(context);
+        findPreference("budget_usage").setSummary(getString(R.string.budget_usage_description,
+                Formatter.formatShortFileSize(context, DataBudget.getBytesUsed(context)),
+                byteLimit > 0 ? Formatter.formatShortFileSize(context, byteLimit) : getString(R.string.budget_unlimited),
+                DataBudget.getRequestsUsed(context),
+                requestLimit > 0 ? String.valueOf(requestLimit) : getString(R.string.budget_unlimited)));
+    }
+
+    // schedules the next check if any checker is active, cancels it otherwise
+    private void reschedule() {
+        if (preferences.getBoolean("notifications_activated", false) || preferences.getBoolean("messages_activated", false))
+            PollScheduler.schedule(context);
+        else
+            PollScheduler.cancel(context);
     }
 
 
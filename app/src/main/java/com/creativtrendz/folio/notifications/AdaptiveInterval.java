@@ -0,0 +1,178 @@
+package com.creativtrendz.folio.notifications;
+
+import android.content.Context;
+
+import com.creativtrendz.folio.utils.Logger;
+
+import net.grandcentrix.tray.TrayAppPreferences;
+
+import java.util.Calendar;
+
+/**
+ * Picks the time until the next check from the recent activity of the account.
+ * <p>
+ * The arrival times of the last new notifications and messages are kept in Tray. Several
+ * arrivals within the last hour halve {@code interval_pref} for every further arrival, an idle
+ * account doubles it for every two hours without an arrival. The result always stays between
+ * {@code interval_min_pref} and {@code interval_max_pref}, bounds which are widened to include
+ * {@code interval_pref} itself.
+ * <p>
+ * The checks, arrivals and chosen intervals of each day are counted in Tray as well. Once a day is
+ * over its summary is saved as {@code stats_yyyyMMdd} and kept for a week.
+ */
+class AdaptiveInterval {
+
+    private static final String TAG = AdaptiveInterval.class.getSimpleName();
+
+    private static final int DEFAULT_INTERVAL = 1800000;
+    private static final int DEFAULT_MIN_INTERVAL = 300000;
+    private static final int DEFAULT_MAX_INTERVAL = 10800000;
+
+    private static final int HISTORY_SIZE = 8;
+    private static final long BURST_WINDOW = 60 * 60 * 1000;
+    private static final int MAX_BURST_SHIFT = 3;
+    private static final long IDLE_STEP = 2 * 60 * 60 * 1000;
+    private static final int MAX_IDLE_SHIFT = 4;
+    private static final int STATS_DAYS = 7;
+
+    private AdaptiveInterval() {
+    }
+
+    /**
+     * @return the time between the last and the next check in milliseconds, simply
+     * {@code interval_pref} if the adaptive interval is switched off
+     */
+    static long getInterval(Context context) {
+        final TrayAppPreferences trayPreferences = new TrayAppPreferences(context);
+        final long now = System.currentTimeMillis();
+        final long base = trayPreferences.getInt("interval_pref", DEFAULT_INTERVAL);
+        if (!trayPreferences.getBoolean("adaptive_interval", true))
+            return base;
+
+        final long min = Math.min(base, trayPreferences.getInt("interval_min_pref", DEFAULT_MIN_INTERVAL));
+        final long max = Math.max(base, trayPreferences.getInt("interval_max_pref", DEFAULT_MAX_INTERVAL));
+        final long[] history = readHistory(trayPreferences);
+
+        long interval = base;
+        String reason = "no activity recorded";
+        if (history.length > 0) {
+            int burst = 0;
+            for (long arrival : history)
+                if (now - arrival < BURST_WINDOW)
+                    burst++;
+
+            if (burst > 1) {
+                interval = base >> Math.min(burst - 1, MAX_BURST_SHIFT);
+                reason = burst + " arrivals in the last hour";
+            } else {
+                final long idle = now - history[history.length - 1];
+                interval = base << (int) Math.min(idle / IDLE_STEP, MAX_IDLE_SHIFT);
+                reason = "idle for " + (idle / 60000) + " minutes";
+            }
+        }
+        interval = Math.max(min, Math.min(max, interval));
+        Logger.getInstance().i(TAG, "Interval: " + (interval / 1000) + " seconds, " + reason);
+        return interval;
+    }
+
+    /**
+     * Records the interval chosen after a finished check. Only these count, intervals asked for
+     * when the app reschedules the checks for other reasons don't.
+     */
+    static void onScheduled(Context context, long interval) {
+        final TrayAppPreferences trayPreferences = new TrayAppPreferences(context);
+
+        rollDay(trayPreferences, System.currentTimeMillis());
+        trayPreferences.put("stats_interval_total", trayPreferences.getLong("stats_interval_total", 0) + interval / 1000);
+        trayPreferences.put("stats_intervals", trayPreferences.getInt("stats_intervals", 0) + 1);
+        final long shortest = trayPreferences.getLong("stats_interval_min", Long.MAX_VALUE);
+        if (interval / 1000 < shortest)
+            trayPreferences.put("stats_interval_min", interval / 1000);
+        if (interval / 1000 > trayPreferences.getLong("stats_interval_max", 0))
+            trayPreferences.put("stats_interval_max", interval / 1000);
+    }
+
+    /**
+     * Records a finished check.
+     *
+     * @param arrivals number of new notifications and messages the check found
+     */
+    static void onChecked(Context context, int arrivals) {
+        final TrayAppPreferences trayPreferences = new TrayAppPreferences(context);
+        final long now = System.currentTimeMillis();
+
+        rollDay(trayPreferences, now);
+        trayPreferences.put("stats_checks", trayPreferences.getInt("stats_checks", 0) + 1);
+        if (arrivals == 0) {
+            trayPreferences.put("stats_empty_checks", trayPreferences.getInt("stats_empty_checks", 0) + 1);
+            return;
+        }
+        trayPreferences.put("stats_arrivals", trayPreferences.getInt("stats_arrivals", 0) + arrivals);
+
+        // the exact arrival time is unknown, every arrival of a check counts at the time of the check
+        final long[] history = readHistory(trayPreferences);
+        final int count = Math.min(arrivals, HISTORY_SIZE);
+        final int kept = Math.min(history.length, HISTORY_SIZE - count);
+        final StringBuilder value = new StringBuilder();
+        for (int i = history.length - kept; i < history.length; i++)
+            value.append(history[i]).append(',');
+        for (int i = 0; i < count; i++)
+            value.append(now).append(',');
+        value.setLength(value.length() - 1);
+        trayPreferences.put("activity_history", value.toString());
+    }
+
+    private static long[] readHistory(TrayAppPreferences trayPreferences) {
+        final String value = trayPreferences.getString("activity_history", "");
+        if (value.length() == 0)
+            return new long[0];
+        final String[] parts = value.split(",");
+        final long[] history = new long[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++)
+                history[i] = Long.parseLong(parts[i]);
+        } catch (NumberFormatException ex) {
+            trayPreferences.remove("activity_history");
+            return new long[0];
+        }
+        return history;
+    }
+
+    // saves the summary of the previous day once a new day started and resets the counters
+    private static void rollDay(TrayAppPreferences trayPreferences, long now) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        final int today = toDay(calendar);
+        final int day = trayPreferences.getInt("stats_day", today);
+        if (day == today) {
+            trayPreferences.put("stats_day", today);
+            return;
+        }
+
+        final int intervals = trayPreferences.getInt("stats_intervals", 0);
+        final long intervalMin = trayPreferences.getLong("stats_interval_min", 0);
+        trayPreferences.put("stats_" + day, "checks=" + trayPreferences.getInt("stats_checks", 0)
+                + ",empty=" + trayPreferences.getInt("stats_empty_checks", 0)
+                + ",arrivals=" + trayPreferences.getInt("stats_arrivals", 0)
+                + ",avg_interval=" + (intervals == 0 ? 0 : trayPreferences.getLong("stats_interval_total", 0) / intervals)
+                + ",min_interval=" + (intervalMin == Long.MAX_VALUE ? 0 : intervalMin)
+                + ",max_interval=" + trayPreferences.getLong("stats_interval_max", 0));
+
+        calendar.add(Calendar.DAY_OF_MONTH, -STATS_DAYS);
+        trayPreferences.remove("stats_" + toDay(calendar));
+
+        trayPreferences.put("stats_day", today);
+        trayPreferences.remove("stats_checks");
+        trayPreferences.remove("stats_empty_checks");
+        trayPreferences.remove("stats_arrivals");
+        trayPreferences.remove("stats_intervals");
+        trayPreferences.remove("stats_interval_total");
+        trayPreferences.remove("stats_interval_min");
+        trayPreferences.remove("stats_interval_max");
+    }
+
+    static int toDay(Calendar calendar) {
+        return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+}
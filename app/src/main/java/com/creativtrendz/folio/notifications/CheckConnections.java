@@ -0,0 +1,82 @@
+package com.creativtrendz.folio.notifications;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import nl.matshofman.saxrssreader.RssReader;
+
+/**
+ * Opens and releases the connections of the background checks, including the ones {@link RssReader}
+ * opens itself once {@link #install()} was called.
+ * <p>
+ * A connection goes back to the platform's keep-alive pool only if its response was read to the end
+ * and the stream closed, {@link HttpURLConnection#disconnect()} closes the socket and the next check
+ * pays for a new TLS handshake. {@link #release(HttpURLConnection, InputStream)} therefore reads what
+ * is left of a response if that is little, and only disconnects otherwise.
+ */
+public class CheckConnections {
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    // a remainder this small costs less than the handshake of a new connection
+    private static final int MAX_DRAIN_BYTES = 16 * 1024;
+
+    private static final RssReader.ConnectionFactory FACTORY = new RssReader.ConnectionFactory() {
+        @Override
+        public URLConnection openConnection(URL url) throws IOException {
+            return open(url, DEFAULT_TIMEOUT);
+        }
+    };
+
+    private CheckConnections() {
+    }
+
+    /** Lets {@link RssReader#read(URL)} open its connections here as well. */
+    public static void install() {
+        RssReader.setConnectionFactory(FACTORY);
+    }
+
+    /** @return the connection, not connected yet */
+    public static HttpURLConnection open(URL url, int timeout) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        return connection;
+    }
+
+    /**
+     * Hands the connection back to the pool, call it on every path out of a request.
+     *
+     * @param stream the response body read from, wrapped by a {@link DataBudget.Meter} to count
+     *               the drained bytes as well, or null if there was no response to read
+     */
+    public static void release(HttpURLConnection connection, InputStream stream) {
+        if (stream != null) {
+            try {
+                final boolean ended = drain(stream);
+                stream.close();
+                if (ended)
+                    return;
+            } catch (IOException e) {
+                // the socket can't be reused, disconnect below
+            }
+        }
+        connection.disconnect();
+    }
+
+    // true if the stream ended within the limit
+    private static boolean drain(InputStream stream) throws IOException {
+        final byte[] buffer = new byte[4096];
+        int drained = 0;
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            drained += read;
+            if (drained > MAX_DRAIN_BYTES)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package com.creativtrendz.folio.notifications;
+
+import android.content.Context;
+
+import net.grandcentrix.tray.TrayAppPreferences;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+
+/**
+ * Daily allowance of bytes and requests for background checks on metered networks.
+ * <p>
+ * Every check counts its requests and the bytes of the responses with a {@link Meter}, the usage
+ * is only added to the budget of the day if the check ran on a metered network. Once either part
+ * of the budget is used up, checks are deferred until an unmetered network is available again.
+ * The limits are {@code budget_bytes_pref} and {@code budget_requests_pref}, 0 is unlimited.
+ */
+public class DataBudget {
+
+    private static final int DEFAULT_BYTE_LIMIT = 5242880;
+    private static final int DEFAULT_REQUEST_LIMIT = 200;
+
+    /** Counts the traffic of a single check, used from its background thread only. */
+    public static class Meter {
+        private final boolean metered;
+        private long bytes;
+        private int requests;
+
+        Meter(boolean metered) {
+            this.metered = metered;
+        }
+
+        void onRequest() {
+            requests++;
+        }
+
+        /** @return the stream, counting every byte read from it */
+        InputStream wrap(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    final int b = super.read();
+                    if (b != -1)
+                        bytes++;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    final int read = super.read(buffer, offset, count);
+                    if (read > 0)
+                        bytes += read;
+                    return read;
+                }
+
+                @Override
+                public long skip(long count) throws IOException {
+                    final long skipped = super.skip(count);
+                    bytes += skipped;
+                    return skipped;
+                }
+            };
+        }
+    }
+
+    private DataBudget() {
+    }
+
+    /** @return true if today's budget is used up, regardless of the current network */
+    public static boolean isExhausted(Context context) {
+        final TrayAppPreferences trayPreferences = new TrayAppPreferences(context);
+        final int byteLimit = getByteLimit(trayPreferences);
+        final int requestLimit = getRequestLimit(trayPreferences);
+        return (byteLimit > 0 && getBytesUsed(trayPreferences) >= byteLimit)
+                || (requestLimit > 0 && getRequestsUsed(trayPreferences) >= requestLimit);
+    }
+
+    /** @return the time until the budget starts over, the start of the next day */
+    static long getTimeUntilReset() {
+        final Calendar calendar = Calendar.getInstance();
+        final long now = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis() - now;
+    }
+
+    /** @return bytes used on metered networks today */
+    public static long getBytesUsed(Context context) {
+        return getBytesUsed(new TrayAppPreferences(context));
+    }
+
+    /** @return requests made on metered networks today */
+    public static int getRequestsUsed(Context context) {
+        return getRequestsUsed(new TrayAppPreferences(context));
+    }
+
+    /** @return daily byte limit, 0 if unlimited */
+    public static int getByteLimit(Context context) {
+        return getByteLimit(new TrayAppPreferences(context));
+    }
+
+    /** @return daily request limit, 0 if unlimited */
+    public static int getRequestLimit(Context context) {
+        return getRequestLimit(new TrayAppPreferences(context));
+    }
+
+    /** Adds the traffic of a finished check to today's budget if it ran on a metered network. */
+    static void record(Context context, Meter meter) {
+        if (!meter.metered || (meter.bytes == 0 && meter.requests == 0))
+            return;
+        final TrayAppPreferences trayPreferences = new TrayAppPreferences(context);
+        final long bytes = getBytesUsed(trayPreferences);
+        final int requests = getRequestsUsed(trayPreferences);
+        trayPreferences.put("budget_day", today());
+        trayPreferences.put("budget_bytes", bytes + meter.bytes);
+        trayPreferences.put("budget_requests", requests + meter.requests);
+    }
+
+    private static long getBytesUsed(TrayAppPreferences trayPreferences) {
+        return trayPreferences.getInt("budget_day", 0) == today() ? trayPreferences.getLong("budget_bytes", 0) : 0;
+    }
+
+    private static int getRequestsUsed(TrayAppPreferences trayPreferences) {
+        return trayPreferences.getInt("budget_day", 0) == today() ? trayPreferences.getInt("budget_requests", 0) : 0;
+    }
+
+    private static int getByteLimit(TrayAppPreferences trayPreferences) {
+        return trayPreferences.getInt("budget_bytes_pref", DEFAULT_BYTE_LIMIT);
+    }
+
+    private static int getRequestLimit(TrayAppPreferences trayPreferences) {
+        return trayPreferences.getInt("budget_requests_pref", DEFAULT_REQUEST_LIMIT);
+    }
+
+    private static int today() {
+        return AdaptiveInterval.toDay(Calendar.getInstance());
+    }
+}
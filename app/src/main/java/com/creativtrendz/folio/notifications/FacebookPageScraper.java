@@ -0,0 +1,133 @@
+package com.creativtrendz.folio.notifications;
+
+import com.creativtrendz.folio.utils.HtmlStreamMatcher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Reads everything the checkers need from a single mobile Facebook page: the jewel counters of
+ * messages and notifications and, if the page links it, the address of the notifications feed.
+ * <p>
+ * The page is matched while it is being downloaded and no document is built. Once all elements
+ * were found, the rest of the page is only downloaded if it is short enough to keep the connection,
+ * see {@link CheckConnections#release(HttpURLConnection, InputStream)}.
+ */
+public class FacebookPageScraper {
+
+    public static final int UNKNOWN = -1;
+
+    private static final String MESSAGES_JEWEL = "div#viewport div#page div._129- #messages_jewel span._59tg";
+    private static final String NOTIFICATIONS_JEWEL = "div#viewport div#page div._129- #notifications_jewel span._59tg";
+    private static final String FEED_LINK = "a[href*=rss20]";
+    private static final String DESKTOP_FEED_LINK = "div._li div#globalContainer div.fwn a[href*=rss20]";
+
+    /** What was found on the page, counters are {@link #UNKNOWN} if they were missing. */
+    public static class Result {
+        private final int messageCount;
+        private final int notificationCount;
+        private final String feedPath;
+
+        Result(int messageCount, int notificationCount, String feedPath) {
+            this.messageCount = messageCount;
+            this.notificationCount = notificationCount;
+            this.feedPath = feedPath;
+        }
+
+        public int getMessageCount() {
+            return messageCount;
+        }
+
+        public int getNotificationCount() {
+            return notificationCount;
+        }
+
+        /** @return the path of the feed link or null if the page doesn't have one */
+        public String getFeedPath() {
+            return feedPath;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cookie is missing, i.e. the cookies aren't synced yet
+     */
+    public static Result scrape(String url, String userAgent, String cookie, int timeout, DataBudget.Meter meter)
+            throws IOException {
+        final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+        final int messages = matcher.add(MESSAGES_JEWEL, null);
+        final int notifications = matcher.add(NOTIFICATIONS_JEWEL, null);
+        final int feed = matcher.add(FEED_LINK, "href");
+        match(matcher, url, userAgent, cookie, timeout, meter);
+
+        return new Result(parseCount(matcher.get(messages)), parseCount(matcher.get(notifications)),
+                toFeedPath(matcher.get(feed)));
+    }
+
+    /**
+     * Looks for the feed link on the desktop notifications page.
+     *
+     * @return the path of the feed link or null if the page doesn't have one
+     * @throws IllegalArgumentException if the cookie is missing, i.e. the cookies aren't synced yet
+     */
+    public static String scrapeFeedPath(String url, String userAgent, String cookie, int timeout,
+            DataBudget.Meter meter) throws IOException {
+        final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+        final int feed = matcher.add(DESKTOP_FEED_LINK, "href");
+        match(matcher, url, userAgent, cookie, timeout, meter);
+        return toFeedPath(matcher.get(feed));
+    }
+
+    private static void match(HtmlStreamMatcher matcher, String url, String userAgent, String cookie, int timeout,
+            DataBudget.Meter meter) throws IOException {
+        if (cookie == null)
+            throw new IllegalArgumentException("Cookie must not be null");
+
+        final HttpURLConnection connection = CheckConnections.open(new URL(url), timeout);
+        meter.onRequest();
+        InputStream stream = null;
+        try {
+            connection.setRequestProperty("User-Agent", userAgent);
+            connection.setRequestProperty("Cookie", cookie);
+
+            final int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK)
+                throw new IOException("Unexpected response code: " + responseCode);
+
+            stream = meter.wrap(connection.getInputStream());
+            matcher.match(new BufferedReader(new InputStreamReader(stream, getCharset(connection))));
+        } finally {
+            // the matcher may be done before the end of the page, the rest is only read if it is short
+            CheckConnections.release(connection, stream);
+        }
+    }
+
+    private static String getCharset(HttpURLConnection connection) {
+        final String contentType = connection.getContentType();
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+                if (parameter.regionMatches(true, 0, "charset=", 0, 8))
+                    return parameter.substring(8).replace("\"", "");
+            }
+        }
+        return "UTF-8";
+    }
+
+    private static String toFeedPath(String href) {
+        return href != null && href.length() > 10 ? href : null;
+    }
+
+    static int parseCount(String count) {
+        if (count == null || !count.matches("^[+-]?\\d+$"))
+            return UNKNOWN;
+        try {
+            return Integer.parseInt(count);
+        } catch (NumberFormatException ex) {
+            return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.creativtrendz.folio.notifications;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+/** Runs a scheduled check on API 21 and newer, see {@link PollScheduler}. */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class FolioJobService extends JobService {
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        new NotificationChecker(getApplicationContext(), new NotificationChecker.Listener() {
+            @Override
+            public void onCheckFinished(boolean succeeded) {
+                PollScheduler.onCheckFinished(getApplicationContext(), succeeded);
+                jobFinished(params, false);
+            }
+        }).start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // the check can't be interrupted, the next one is scheduled once it finished
+        return false;
+    }
+}
@@ -0,0 +1,583 @@
+package com.creativtrendz.folio.notifications;
+
+import android.annotation.SuppressLint;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationCompat.WearableExtender;
+import android.support.v4.app.TaskStackBuilder;
+import android.webkit.CookieManager;
+import android.webkit.CookieSyncManager;
+import android.widget.Toast;
+
+import com.creativetrends.folio.app.R;
+import com.creativtrendz.folio.activities.MainActivity;
+import com.creativtrendz.folio.services.Connectivity;
+import com.creativtrendz.folio.utils.Logger;
+
+import net.grandcentrix.tray.TrayAppPreferences;
+
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+
+import nl.matshofman.saxrssreader.RssItem;
+import nl.matshofman.saxrssreader.RssReader;
+
+/**
+ * One check of notifications and messages. It is started by {@link PollScheduler} through
+ * {@link FolioJobService} or {@link FolioNotifications} and reports back when it is done, the
+ * next check is scheduled from there.
+ */
+class NotificationChecker {
+
+    /** Called on the main thread once the check is done. */
+    interface Listener {
+        /** @param succeeded false if the check was skipped or one of the activated checkers failed */
+        void onCheckFinished(boolean succeeded);
+    }
+
+    // Facebook URL constants
+    private static final String BASE_URL = "https://www.facebook.com";
+    private static final String NOTIFICATIONS_URL = "https://www.facebook.com/notifications";
+    private static final String NOTIFICATIONS_URL_BACKUP = "https://web.facebook.com/notifications";
+    private static final String MESSAGES_URL = "https://m.facebook.com/messages";
+    private static final String MESSAGES_URL_BACKUP = "https://mobile.facebook.com/messages";
+    private static final String NOTIFICATION_MESSAGE_URL = "https://m.facebook.com/messages";
+    private static final String NOTIFICATIONS_URL_MOBILE = "https://m.facebook.com/notifications";
+
+    // number of trials during notifications or messages checking
+    private static final int MAX_RETRY = 3;
+    private static final int TIMEOUT = 10000;
+    private static final int MAX_INBOX_LINES = 5;
+    private static final String TAG = NotificationChecker.class.getSimpleName();
+
+    private final Context context;
+    private final Listener listener;
+    private final TrayAppPreferences trayPreferences;
+    private String userAgent;
+
+    /* Well, bad practice. Object name starting with a capital, but it's convenient.
+    In order to use my custom logger I just removed Log import and I'm getting an
+    instance of my Logger here. Its usage is exactly the same as the usage of Log */
+    private final Logger Log;
+
+    NotificationChecker(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        trayPreferences = new TrayAppPreferences(context);
+        Log = Logger.getInstance();
+    }
+
+    /** Starts the check, must be called on the main thread. */
+    void start() {
+        // start AsyncTasks if there is internet connection
+        if (!Connectivity.isConnected(context)) {
+            Log.i(TAG, "No internet connection. Skip checking.");
+            listener.onCheckFinished(false);
+            return;
+        }
+
+        // on metered networks the daily budget decides, once it's used up checks wait for Wi-Fi
+        final boolean metered = Connectivity.isConnectedMetered(context);
+        if (metered && DataBudget.isExhausted(context)) {
+            Log.i(TAG, "Data budget of today used up. Deferring checking until Wi-Fi.");
+            listener.onCheckFinished(true);
+            return;
+        }
+
+        Log.i(TAG, "Internet connection active. Starting AsyncTasks...");
+        String connectionType = "Wi-Fi";
+        if (Connectivity.isConnectedMobile(context))
+            connectionType = "Mobile";
+        Log.i(TAG, "Connection Type: " + connectionType
+                + (Connectivity.isConnectedFast(context) ? ", fast" : ", slow") + (metered ? ", metered" : ""));
+        userAgent = trayPreferences.getString("webview_user_agent", System.getProperty("http.agent"));
+        Log.i(TAG, "User Agent: " + userAgent);
+
+        final boolean checkNotifications = trayPreferences.getBoolean("notifications_activated", false);
+        final boolean checkMessages = trayPreferences.getBoolean("messages_activated", false);
+        if (!checkNotifications && !checkMessages) {
+            listener.onCheckFinished(true);
+            return;
+        }
+
+        // save current time (last potentially successful checking)
+        trayPreferences.put("last_check", System.currentTimeMillis());
+        new CheckTask(checkNotifications, checkMessages, new DataBudget.Meter(metered)).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void) null);
+    }
+
+    /** Checker task: one page fetch per check, its results are handed to the notifications and the messages checker. */
+    private class CheckTask extends AsyncTask<Void, Void, Void> {
+
+        private final boolean checkNotifications;
+        private final boolean checkMessages;
+        private final DataBudget.Meter meter;
+        private boolean syncProblemOccurred = false;
+
+        // notifications: the new items, or notModified if there is nothing to do
+        private ArrayList<RssItem> items;
+        private boolean notModified = false;
+
+        // cache validators of the fetched feed, saved once the items were handled
+        private String etag;
+        private String lastModified;
+
+        // nothing was ever seen, only the newest of the items is shown
+        private boolean firstRun = false;
+
+        // messages: number of unread messages or UNKNOWN
+        private int messageCount = FacebookPageScraper.UNKNOWN;
+
+        // new notifications and messages found by this check
+        private int arrivals = 0;
+
+        // outcome of this check, an unmodified feed is a success as well
+        private boolean notificationsSucceeded = false;
+        private boolean messagesSucceeded = false;
+
+        CheckTask(boolean checkNotifications, boolean checkMessages, DataBudget.Meter meter) {
+            this.checkNotifications = checkNotifications;
+            this.checkMessages = checkMessages;
+            this.meter = meter;
+        }
+
+        private FacebookPageScraper.Result scrape(String connectUrl) {
+            try {
+                Log.i("CheckTask:scrape", "Trying: " + connectUrl);
+                return FacebookPageScraper.scrape(connectUrl, userAgent,
+                        CookieManager.getInstance().getCookie("https://m.facebook.com"), TIMEOUT, meter);
+            } catch (IllegalArgumentException ex) {
+                Log.i("CheckTask", "Cookie sync problem occurred");
+                if (!syncProblemOccurred) {
+                    syncProblemToast();
+                    syncProblemOccurred = true;
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            return null;
+        }
+
+        private String getFeed(String connectUrl) {
+            try {
+                final String feedPath = FacebookPageScraper.scrapeFeedPath(connectUrl, userAgent,
+                        CookieManager.getInstance().getCookie("https://m.facebook.com"), TIMEOUT, meter);
+                return feedPath != null ? feedPath : "failure";
+            } catch (IllegalArgumentException ex) {
+                Log.i("CheckTask", "Cookie sync problem occurred");
+                if (!syncProblemOccurred) {
+                    syncProblemToast();
+                    syncProblemOccurred = true;
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            return "failure";
+        }
+
+        // finds the address of the rss feed, on the mobile page if it links it or else on the notifications page
+        private String discoverFeedUrl(FacebookPageScraper.Result page) {
+            if (page != null && page.getFeedPath() != null)
+                return BASE_URL + page.getFeedPath();
+
+            // try to generate rss feed address
+            Log.i("CheckTask:getFeed", "Trying: " + NOTIFICATIONS_URL);
+            String secondPart = getFeed(NOTIFICATIONS_URL);
+            if (secondPart.length() < 10) {
+                Log.i("CheckTask:getFeed", "Trying: " + NOTIFICATIONS_URL_BACKUP);
+                secondPart = getFeed(NOTIFICATIONS_URL_BACKUP);
+            }
+            // final generation: base + second part
+            if (secondPart.length() > 10)
+                return BASE_URL + secondPart;
+            return null;
+        }
+
+        // the saved feed address and validators are only good as long as the feed can be read
+        private void forgetFeed() {
+            trayPreferences.remove("feed_url");
+            trayPreferences.remove("feed_etag");
+            trayPreferences.remove("feed_last_modified");
+        }
+
+        // conditional GET of the feed, returns null if it wasn't modified since the last check
+        private ArrayList<RssItem> readFeed(String feedUrl, RssReader.StopCondition stopCondition)
+                throws IOException, SAXException {
+            final HttpURLConnection connection = CheckConnections.open(new URL(feedUrl), TIMEOUT);
+            meter.onRequest();
+            InputStream stream = null;
+            try {
+                final String savedEtag = trayPreferences.getString("feed_etag", null);
+                final String savedLastModified = trayPreferences.getString("feed_last_modified", null);
+                if (savedEtag != null)
+                    connection.setRequestProperty("If-None-Match", savedEtag);
+                if (savedLastModified != null)
+                    connection.setRequestProperty("If-Modified-Since", savedLastModified);
+
+                final int responseCode = connection.getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    notModified = true;
+                    // empty, but closing it keeps the connection for the next check
+                    stream = meter.wrap(connection.getInputStream());
+                    return null;
+                }
+                if (responseCode != HttpURLConnection.HTTP_OK)
+                    throw new IOException("Unexpected response code: " + responseCode);
+
+                etag = connection.getHeaderField("ETag");
+                lastModified = connection.getHeaderField("Last-Modified");
+                stream = meter.wrap(connection.getInputStream());
+                return RssReader.read(stream, stopCondition, null).getRssItems();
+            } finally {
+                CheckConnections.release(connection, stream);
+            }
+        }
+
+        private void readNotifications(FacebookPageScraper.Result page) {
+            // the jewel says there is nothing new, no need to look at the feed
+            if (page != null && page.getNotificationCount() == 0) {
+                notModified = true;
+                return;
+            }
+
+            int tries = 0;
+
+            // the feed lists the newest first, reading stops at the first item which was already seen
+            final SeenItemStore seenItems = SeenItemStore.getInstance(context);
+            final RssReader.StopCondition alreadySeen;
+            if (seenItems.isEmpty()) {
+                // nothing stored yet, compare to the PubDate saved by older versions
+                final String savedDate = trayPreferences.getString("saved_date", null);
+                firstRun = savedDate == null;
+                alreadySeen = new RssReader.StopCondition() {
+                    @Override
+                    public boolean shouldStop(RssItem item) {
+                        return item.getPubDate() != null && item.getPubDate().toString().equals(savedDate);
+                    }
+                };
+            } else {
+                alreadySeen = new RssReader.StopCondition() {
+                    @Override
+                    public boolean shouldStop(RssItem item) {
+                        return seenItems.contains(item);
+                    }
+                };
+            }
+
+            while (tries++ < MAX_RETRY && items == null && !notModified) {
+                // the feed address is scraped once and then reused until the feed fails
+                String feedUrl = trayPreferences.getString("feed_url", null);
+                if (feedUrl == null) {
+                    feedUrl = discoverFeedUrl(page);
+                    if (feedUrl == null)
+                        continue;
+                    trayPreferences.put("feed_url", feedUrl);
+                }
+
+                try {
+                    Log.i("CheckTask", "readNotifications: Processing... Trial: " + tries);
+                    items = readFeed(feedUrl, alreadySeen);
+                    if (items != null)
+                        seenItems.addAll(items);
+                } catch (MalformedURLException ex) {
+                    Log.i("CheckTask", "readNotifications: URL error");
+                    forgetFeed();
+                } catch (SAXException | IOException ex) {
+                    Log.i("CheckTask", "readNotifications: Feed error");
+                    forgetFeed();
+                }
+            }
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            FacebookPageScraper.Result page = null;
+            int tries = 0;
+
+            // sync cookies to get the right data
+            syncCookies();
+
+            while (tries++ < MAX_RETRY && (page == null || page.getMessageCount() == FacebookPageScraper.UNKNOWN)) {
+                Log.i("CheckTask", "doInBackground: Processing... Trial: " + tries);
+                FacebookPageScraper.Result next = scrape(MESSAGES_URL);
+                if (next == null || next.getMessageCount() == FacebookPageScraper.UNKNOWN) {
+                    final FacebookPageScraper.Result backup = scrape(MESSAGES_URL_BACKUP);
+                    if (backup != null)
+                        next = backup;
+                }
+                if (next != null)
+                    page = next;
+            }
+
+            if (checkMessages && page != null)
+                messageCount = page.getMessageCount();
+            if (checkNotifications)
+                readNotifications(page);
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            if (checkNotifications)
+                onNotificationsChecked();
+            if (checkMessages)
+                onMessagesChecked();
+            AdaptiveInterval.onChecked(context, arrivals);
+            DataBudget.record(context, meter);
+            listener.onCheckFinished((!checkNotifications || notificationsSucceeded)
+                    && (!checkMessages || messagesSucceeded));
+        }
+
+        private void onNotificationsChecked() {
+
+            /** The first service start ever will display a fake notification.
+             *  Not fake actually - the latest one. I've been thinking instead
+             *  of avoiding it, it's a nice example how it will work in the future.
+             */
+
+            // nothing changed since the last successful check
+            if (notModified) {
+                notificationsSucceeded = true;
+                trayPreferences.put("ntf_last_status", true);
+                Log.i("CheckTask", "onNotificationsChecked: Feed not modified");
+                return;
+            }
+
+            // the items are only the ones which weren't seen before, so any item is a new notification
+            // display them only when MainActivity is not active or 'Always notify' is checked
+            try {
+                if (!items.isEmpty()) {
+                    if (firstRun)
+                        items = new ArrayList<>(items.subList(0, 1));
+                    else
+                        arrivals += items.size();
+                    if (!trayPreferences.getBoolean("activity_visible", false) || trayPreferences.getBoolean("notifications_everywhere", true))
+                        notifyItems(items);
+
+                    // the seen items are stored from now on
+                    trayPreferences.remove("saved_date");
+                }
+
+                // save the validators for the next conditional request
+                if (etag != null)
+                    trayPreferences.put("feed_etag", etag);
+                else
+                    trayPreferences.remove("feed_etag");
+                if (lastModified != null)
+                    trayPreferences.put("feed_last_modified", lastModified);
+                else
+                    trayPreferences.remove("feed_last_modified");
+
+                // save this check status
+                notificationsSucceeded = true;
+                trayPreferences.put("ntf_last_status", true);
+                Log.i("CheckTask", "onNotificationsChecked: Aight biatch ;)");
+            } catch (NullPointerException ex) {
+                // save this check status
+                trayPreferences.put("ntf_last_status", false);
+                Log.i("CheckTask", "onNotificationsChecked: Failure");
+            }
+        }
+
+        @SuppressLint("StringFormatInvalid")
+        private void onMessagesChecked() {
+            if (messageCount == FacebookPageScraper.UNKNOWN) {
+                // save this check status
+                trayPreferences.put("msg_last_status", false);
+                Log.i("CheckTask", "onMessagesChecked: Failure");
+                return;
+            }
+
+            if (!trayPreferences.getBoolean("activity_visible", false) || trayPreferences.getBoolean("notifications_everywhere", true)) {
+                if (messageCount == 1)
+                    notifier(context.getString(R.string.you_have_one_message), null, NOTIFICATION_MESSAGE_URL, true);
+                else if (messageCount > 1)
+                    notifier(String.format(context.getString(R.string.you_have_n_messages), messageCount), null, NOTIFICATION_MESSAGE_URL, true);
+            }
+
+            // more unread messages than last time is new activity
+            if (messageCount > trayPreferences.getInt("msg_last_count", 0))
+                arrivals += messageCount - trayPreferences.getInt("msg_last_count", 0);
+            trayPreferences.put("msg_last_count", messageCount);
+
+            // save this check status
+            messagesSucceeded = true;
+            trayPreferences.put("msg_last_status", true);
+            Log.i("CheckTask", "onMessagesChecked: Aight biatch ;)");
+        }
+
+    }
+
+
+    /** CookieSyncManager was deprecated in API level 21.
+     *  We need it for API level lower than 21 though.
+     *  In API level >= 21 it's done automatically.
+     */
+    @SuppressWarnings("deprecation")
+    private void syncCookies() {
+        if (Build.VERSION.SDK_INT < 21) {
+            CookieSyncManager.createInstance(context);
+            CookieSyncManager.getInstance().sync();
+        }
+    }
+
+    // show a Sync Problem Toast while not being on UI Thread
+    private void syncProblemToast() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(context, context.getString(R.string.sync_problem),
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    @SuppressLint("InlinedApi")
+    // a single item is shown on its own, several items are grouped into one inbox notification
+    private void notifyItems(ArrayList<RssItem> items) {
+        if (items.size() == 1) {
+            final RssItem item = items.get(0);
+            notifier(item.getTitle(), null, item.getLink(), false);
+            return;
+        }
+
+        final String title = String.format(context.getString(R.string.you_have_n_notifications), items.size());
+        final NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle().setBigContentTitle(title);
+        final int lines = Math.min(items.size(), MAX_INBOX_LINES);
+        for (int i = 0; i < lines; i++)
+            style.addLine(items.get(i).getTitle());
+        if (items.size() > lines)
+            style.setSummaryText(String.format(context.getString(R.string.and_n_more), items.size() - lines));
+        notifier(title, style, NOTIFICATIONS_URL_MOBILE, false);
+    }
+
+    /** @param style style of the expanded notification, null to show the whole title */
+    private void notifier(String title, NotificationCompat.Style style, String url, boolean isMessage) {
+
+        final String contentTitle;
+        if (isMessage)
+            contentTitle = context.getString(R.string.app_name);
+        else
+            contentTitle = context.getString(R.string.app_name);
+
+
+        Log.i(TAG, "Start notification - isMessage: " + isMessage);
+
+        Intent actionIntent = new Intent(context, MainActivity.class);
+        actionIntent.putExtra("start_url", "https://m.facebook.com/notifications");
+        PendingIntent actionPendingIntent =
+                PendingIntent.getActivity(context, 0, actionIntent,
+                        PendingIntent.FLAG_UPDATE_CURRENT);
+
+        Intent messageIntent = new Intent(context, MainActivity.class);
+        messageIntent.putExtra("start_url", "https://m.facebook.com/messages");
+        PendingIntent messagePendingIntent =
+                PendingIntent.getActivity(context, 1, messageIntent,
+                        PendingIntent.FLAG_UPDATE_CURRENT);
+
+        NotificationCompat.Action action =
+                new NotificationCompat.Action.Builder(R.drawable.ic_public,
+                        context.getString(R.string.app_name), actionPendingIntent)
+                        .build();
+
+        NotificationCompat.Action message =
+                new NotificationCompat.Action.Builder(R.drawable.ic_messenger_new,
+                        context.getString(R.string.app_name), messagePendingIntent)
+                        .build();
+
+
+        NotificationCompat.Builder mBuilder =
+                new NotificationCompat.Builder(context)
+                        .setStyle(style != null ? style : new NotificationCompat.BigTextStyle().bigText(title))
+                        .setSmallIcon(R.drawable.ic_stat_f)
+                        .setColor(context.getResources().getColor(R.color.PrimaryDarkColor))
+                        .setContentTitle(contentTitle)
+                        .setContentText(title)
+                        .setTicker(title)
+                        .setWhen(System.currentTimeMillis())
+                        .extend(new WearableExtender().addAction(action))
+                        .setAutoCancel(true);
+
+
+
+        if (!isMessage) {
+            Intent allNotificationsIntent = new Intent(context, MainActivity.class);
+            allNotificationsIntent.putExtra("start_url", "https://m.facebook.com/notifications");
+            allNotificationsIntent.setAction("ALL_NOTIFICATIONS_ACTION");
+            PendingIntent piAllNotifications = PendingIntent.getActivity(context, 0, allNotificationsIntent, 0);
+            mBuilder.addAction(R.drawable.ic_public, context.getString(R.string.all_notifications), piAllNotifications);
+            mBuilder.extend(new WearableExtender().addAction(message));
+
+        }
+
+        // ringtone
+        String ringtoneKey = "ringtone";
+        if (isMessage)
+            ringtoneKey = "ringtone_msg";
+
+        Uri ringtoneUri = Uri.parse(trayPreferences.getString(ringtoneKey, "content://settings/system/notification_sound"));
+        mBuilder.setSound(ringtoneUri);
+
+        // vibration
+        if (trayPreferences.getBoolean("vibrate", false))
+            mBuilder.setVibrate(new long[] {500, 500});
+        else
+            mBuilder.setVibrate(new long[] {0L});
+
+        // LED light
+        if (trayPreferences.getBoolean("led_light", false)) {
+            Resources resources = context.getResources(), systemResources = Resources.getSystem();
+            mBuilder.setLights(Color.CYAN,
+                    resources.getInteger(systemResources.getIdentifier("config_defaultNotificationLedOn", "integer", "android")),
+                    resources.getInteger(systemResources.getIdentifier("config_defaultNotificationLedOff", "integer", "android")));
+        }
+
+        // priority for Heads-up
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            mBuilder.setPriority(Notification.PRIORITY_HIGH);
+
+        // intent with notification url in extra
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.putExtra("start_url", url);
+        intent.setAction("NOTIFICATION_URL_ACTION");
+
+        // final notification building
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addParentStack(MainActivity.class);
+        stackBuilder.addNextIntent(intent);
+        PendingIntent resultPendingIntent = PendingIntent.getActivity(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        mBuilder.setContentIntent(resultPendingIntent);
+        mBuilder.setOngoing(false);
+        Notification note = mBuilder.build();
+
+        // LED light flag
+        if (trayPreferences.getBoolean("led_light", false))
+            note.flags |= Notification.FLAG_SHOW_LIGHTS;
+
+        // display a notification
+        NotificationManager mNotificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        // because message notifications are displayed separately
+        if (isMessage)
+            mNotificationManager.notify(1, note);
+        else
+            mNotificationManager.notify(0, note);
+    }
+}
@@ -0,0 +1,145 @@
+package com.creativtrendz.folio.notifications;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.creativtrendz.folio.utils.Logger;
+
+import net.grandcentrix.tray.TrayAppPreferences;
+
+/**
+ * Schedules the next check of notifications and messages.
+ * <p>
+ * Nothing stays resident between two checks. From API 21 on the check is a {@link JobScheduler}
+ * job which only runs with a network connection and is batched with the wakeups of other apps by
+ * the system, older versions use an inexact {@link AlarmManager} alarm which starts
+ * {@link FolioNotifications}. Every finished check schedules the next one. Once the
+ * {@link DataBudget} of the day is used up, jobs wait for an unmetered network and checks started
+ * by an alarm on a metered network are skipped. Such a job still runs on any network once the
+ * budget starts over the next day.
+ * <p>
+ * The next check is due an {@link AdaptiveInterval} after {@code last_check}, or right away if the
+ * last status of an activated checker is a failure. Failed checks back off exponentially,
+ * starting at a minute and never waiting longer than the interval.
+ */
+public class PollScheduler {
+
+    private static final String TAG = PollScheduler.class.getSimpleName();
+    private static final int JOB_ID = 1;
+    private static final long MIN_BACKOFF = 60 * 1000;
+    private static final int MAX_BACKOFF_SHIFT = 10;
+    // makes sure the day, and with it the budget, rolled over before a deferred job runs anyway
+    private static final long RESET_MARGIN = 60 * 1000;
+
+    /** Schedules the next check, an already scheduled check is replaced. */
+    public static void schedule(Context context) {
+        schedule(context, AdaptiveInterval.getInterval(context));
+    }
+
+    private static void schedule(Context context, long interval) {
+        final TrayAppPreferences trayPreferences = new TrayAppPreferences(context);
+        final int failures = trayPreferences.getInt("poll_failures", 0);
+
+        long delay;
+        if (failures > 0) {
+            delay = Math.min(interval, MIN_BACKOFF << Math.min(failures - 1, MAX_BACKOFF_SHIFT));
+        } else if (isLastCheckSuccessful(trayPreferences)) {
+            final long now = System.currentTimeMillis();
+            final long sinceLastCheck = now - trayPreferences.getLong("last_check", now);
+            delay = Math.max(0, interval - sinceLastCheck);
+        } else {
+            delay = 0;
+        }
+
+        Logger.getInstance().i(TAG, "Next check in " + (delay / 1000) + " seconds, failures: " + failures);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+            scheduleJob(context, delay, DataBudget.isExhausted(context));
+        else
+            scheduleAlarm(context, delay);
+    }
+
+    /** Cancels the scheduled check. */
+    public static void cancel(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+            cancelJob(context);
+        else
+            cancelAlarm(context);
+    }
+
+    /**
+     * Sets the alarm of the next check an interval from now, before a check started by an alarm
+     * runs. If the process is killed during the check the checks go on at that time, otherwise
+     * the check replaces the alarm once it's done.
+     */
+    static void scheduleFallback(Context context) {
+        scheduleAlarm(context, AdaptiveInterval.getInterval(context));
+    }
+
+    /** Counts the failures for the backoff and schedules the next check. */
+    static void onCheckFinished(Context context, boolean succeeded) {
+        final TrayAppPreferences trayPreferences = new TrayAppPreferences(context);
+        if (succeeded)
+            trayPreferences.put("poll_failures", 0);
+        else
+            trayPreferences.put("poll_failures", trayPreferences.getInt("poll_failures", 0) + 1);
+
+        if (trayPreferences.getBoolean("notifications_activated", false)
+                || trayPreferences.getBoolean("messages_activated", false)) {
+            final long interval = AdaptiveInterval.getInterval(context);
+            AdaptiveInterval.onScheduled(context, interval);
+            schedule(context, interval);
+        } else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            // the checks were switched off during this one, drop its fallback alarm
+            cancelAlarm(context);
+        }
+    }
+
+    private static boolean isLastCheckSuccessful(TrayAppPreferences trayPreferences) {
+        if (trayPreferences.getBoolean("notifications_activated", false)
+                && !trayPreferences.getBoolean("ntf_last_status", false))
+            return false;
+        return !trayPreferences.getBoolean("messages_activated", false)
+                || trayPreferences.getBoolean("msg_last_status", false);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context, long delay, boolean unmeteredOnly) {
+        final JobInfo.Builder builder = new JobInfo.Builder(JOB_ID, new ComponentName(context, FolioJobService.class))
+                .setRequiredNetworkType(unmeteredOnly ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY)
+                .setMinimumLatency(delay)
+                .setPersisted(true);
+        // without an unmetered network the checks would stop for good, the deadline runs the job
+        // regardless of the network once there is a new budget
+        if (unmeteredOnly)
+            builder.setOverrideDeadline(Math.max(delay, DataBudget.getTimeUntilReset() + RESET_MARGIN));
+        ((JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE)).schedule(builder.build());
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void cancelJob(Context context) {
+        ((JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE)).cancel(JOB_ID);
+    }
+
+    // set() is inexact from KitKat on, the system may move it to batch it with other alarms
+    private static void scheduleAlarm(Context context, long delay) {
+        final AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + delay,
+                getAlarmIntent(context));
+    }
+
+    private static void cancelAlarm(Context context) {
+        ((AlarmManager) context.getSystemService(Context.ALARM_SERVICE)).cancel(getAlarmIntent(context));
+    }
+
+    private static PendingIntent getAlarmIntent(Context context) {
+        return PendingIntent.getService(context, 0, new Intent(context, FolioNotifications.class), 0);
+    }
+}
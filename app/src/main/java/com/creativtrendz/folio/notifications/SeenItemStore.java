@@ -0,0 +1,156 @@
+package com.creativtrendz.folio.notifications;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.BitSet;
+import java.util.List;
+
+import nl.matshofman.saxrssreader.RssItem;
+
+/**
+ * Remembers the notifications which were already shown.
+ * <p>
+ * The ids of the last {@value #CAPACITY} items are kept in a small database. A Bloom filter over
+ * the same ids answers most lookups from memory: an item it doesn't know was certainly never seen,
+ * only a possible match is confirmed with a primary key lookup. The filter is rebuilt from the
+ * database once per process.
+ */
+class SeenItemStore {
+
+    private static final String DATABASE_NAME = "seen_items.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final String TABLE = "seen";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_SEEN = "seen";
+
+    private static final int CAPACITY = 500;
+    // about 1% false positives at full capacity
+    private static final int FILTER_BITS = 8192;
+    private static final int FILTER_HASHES = 7;
+
+    private static SeenItemStore instance;
+
+    private final SQLiteOpenHelper helper;
+    private BitSet filter;
+
+    private SeenItemStore(Context context) {
+        helper = new SQLiteOpenHelper(context, DATABASE_NAME, null, DATABASE_VERSION) {
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE " + TABLE + " (" + COLUMN_ID + " TEXT PRIMARY KEY, "
+                        + COLUMN_SEEN + " INTEGER NOT NULL)");
+                db.execSQL("CREATE INDEX " + TABLE + "_" + COLUMN_SEEN + " ON " + TABLE + " (" + COLUMN_SEEN + ")");
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            }
+        };
+    }
+
+    static synchronized SeenItemStore getInstance(Context context) {
+        if (instance == null)
+            instance = new SeenItemStore(context.getApplicationContext());
+        return instance;
+    }
+
+    /** @return the id of the item, its guid or if missing its link or title and date */
+    static String getId(RssItem item) {
+        if (item.getGuid() != null && item.getGuid().trim().length() > 0)
+            return item.getGuid().trim();
+        if (item.getLink() != null && item.getLink().trim().length() > 0)
+            return item.getLink().trim();
+        return item.getTitle() + '|' + item.getPubDateMillis();
+    }
+
+    /** @return true if nothing was ever stored, i.e. there is nothing to compare a feed to */
+    synchronized boolean isEmpty() {
+        return DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), TABLE) == 0;
+    }
+
+    synchronized boolean contains(RssItem item) {
+        final String id = getId(item);
+        if (!mightContain(id))
+            return false;
+        return DatabaseUtils.longForQuery(helper.getReadableDatabase(),
+                "SELECT COUNT(*) FROM " + TABLE + " WHERE " + COLUMN_ID + " = ?", new String[] {id}) > 0;
+    }
+
+    /** Stores the items and drops the oldest ones above the capacity. */
+    synchronized void addAll(List<RssItem> items) {
+        if (items.isEmpty())
+            return;
+        ensureFilter();
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            final ContentValues values = new ContentValues();
+            // the feed lists the newest first, it gets the latest time so it's evicted last
+            for (int i = items.size() - 1; i >= 0; i--) {
+                final String id = getId(items.get(i));
+                values.put(COLUMN_ID, id);
+                values.put(COLUMN_SEEN, now + items.size() - 1 - i);
+                db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                addToFilter(id);
+            }
+            db.execSQL("DELETE FROM " + TABLE + " WHERE " + COLUMN_ID + " NOT IN (SELECT " + COLUMN_ID
+                    + " FROM " + TABLE + " ORDER BY " + COLUMN_SEEN + " DESC LIMIT " + CAPACITY + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        // evicted ids stay in the filter until the next process, they only cost a database lookup
+    }
+
+    private boolean mightContain(String id) {
+        ensureFilter();
+        final int hash1 = id.hashCode();
+        final int hash2 = secondHash(id);
+        for (int i = 0; i < FILTER_HASHES; i++)
+            if (!filter.get(index(hash1, hash2, i)))
+                return false;
+        return true;
+    }
+
+    private void addToFilter(String id) {
+        final int hash1 = id.hashCode();
+        final int hash2 = secondHash(id);
+        for (int i = 0; i < FILTER_HASHES; i++)
+            filter.set(index(hash1, hash2, i));
+    }
+
+    private void ensureFilter() {
+        if (filter != null)
+            return;
+        filter = new BitSet(FILTER_BITS);
+        final Cursor cursor = helper.getReadableDatabase().query(TABLE, new String[] {COLUMN_ID},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext())
+                addToFilter(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // double hashing, the i-th probe is hash1 + i * hash2
+    private static int index(int hash1, int hash2, int i) {
+        return ((hash1 + i * hash2) & Integer.MAX_VALUE) % FILTER_BITS;
+    }
+
+    // FNV-1a, independent of String.hashCode()
+    private static int secondHash(String id) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash | 1;
+    }
+}
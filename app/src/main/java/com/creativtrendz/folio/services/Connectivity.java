@@ -1,24 +1,77 @@
 package com.creativtrendz.folio.services;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.support.v4.net.ConnectivityManagerCompat;
 import android.telephony.TelephonyManager;
 
 /**
  * Check device's network connectivity and speed
+ * <p>
+ * The state of the active network is cached and only queried again after a
+ * {@link ConnectivityManager#CONNECTIVITY_ACTION} broadcast.
  * @author emil http://stackoverflow.com/users/220710/emil
  */
 public class Connectivity {
 
+    private static final Object lock = new Object();
+    private static boolean receiverRegistered;
+    private static boolean valid;
+    private static NetworkInfo networkInfo;
+    private static boolean metered;
+
     /**
      * Get the network info
      * @param context app context
      * @return NetworkInfo
      */
     public static NetworkInfo getNetworkInfo(Context context) {
-        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        return cm.getActiveNetworkInfo();
+        synchronized (lock) {
+            if (!valid)
+                refresh(context);
+            return networkInfo;
+        }
+    }
+
+    /**
+     * Check if the active network is metered, i.e. the user may pay for the data
+     * @param context app context
+     * @return boolean
+     */
+    public static boolean isConnectedMetered(Context context) {
+        synchronized (lock) {
+            if (!valid)
+                refresh(context);
+            return networkInfo != null && networkInfo.isConnected() && metered;
+        }
+    }
+
+    private static void refresh(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        if (!receiverRegistered) {
+            // registered before the query, so no change after it can be missed
+            applicationContext.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    // the sticky broadcast delivered on registration carries nothing new
+                    if (isInitialStickyBroadcast())
+                        return;
+                    synchronized (lock) {
+                        valid = false;
+                    }
+                }
+            }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            receiverRegistered = true;
+        }
+
+        ConnectivityManager cm = (ConnectivityManager) applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        networkInfo = cm.getActiveNetworkInfo();
+        metered = ConnectivityManagerCompat.isActiveNetworkMetered(cm);
+        valid = true;
     }
 
     /**
@@ -116,3 +169,4 @@ public class Connectivity {
         }
     }
 
+}
@@ -0,0 +1,184 @@
+package com.creativtrendz.folio.ui;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.Base64;
+import android.util.Log;
+import android.webkit.WebView;
+
+import com.creativtrendz.folio.utils.PreferencesUtility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the style sheets injected into the Facebook pages.
+ * <p>
+ * Every asset is read once. The sheets of the active theme and layout toggles are merged into one
+ * script which is cached for the current preference fingerprint and only rebuilt after one of
+ * these preferences changed.
+ */
+public class CssInjector {
+
+    private static final String TAG = "CssInjector";
+    private static final String THEME_PREFERENCE = "theme_preference";
+    private static final String FACEBOOK_THEMES = "theme_preference_fb";
+    private static final String HIDE_PEOPLE = "hide_people";
+
+    private static CssInjector sInstance;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final Map<String, byte[]> assets = new HashMap<>();
+    private final Map<String, String> assetScripts = new HashMap<>();
+    private String pageFingerprint;
+    private String pageScript;
+
+    // kept as a field, SharedPreferences only holds a weak reference to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener listener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    if (THEME_PREFERENCE.equals(key) || FACEBOOK_THEMES.equals(key) || HIDE_PEOPLE.equals(key)) {
+                        synchronized (CssInjector.this) {
+                            pageFingerprint = null;
+                            pageScript = null;
+                        }
+                    }
+                }
+            };
+
+    private CssInjector(Context context) {
+        this.context = context;
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        preferences.registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    public static synchronized CssInjector getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new CssInjector(context.getApplicationContext());
+        return sInstance;
+    }
+
+    /** Builds the page script in the background so the first page load doesn't have to. */
+    public void prepare() {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                getPageScript();
+            }
+        });
+    }
+
+    /** Injects the theme and layout sheets selected in the settings. */
+    public void injectPage(WebView webView) {
+        inject(webView, getPageScript());
+    }
+
+    /** Injects a single style sheet from the assets. */
+    public void injectAsset(WebView webView, String asset) {
+        String script;
+        synchronized (this) {
+            script = assetScripts.get(asset);
+            if (script == null) {
+                script = buildScript(readAsset(asset));
+                assetScripts.put(asset, script);
+            }
+        }
+        inject(webView, script);
+    }
+
+    private synchronized String getPageScript() {
+        final String theme = PreferencesUtility.getInstance(context).getTheme();
+        final String freeTheme = PreferencesUtility.getInstance(context).getFreeTheme();
+        final boolean hidePeople = preferences.getBoolean(HIDE_PEOPLE, false);
+        final String fingerprint = theme + '|' + freeTheme + '|' + hidePeople;
+        if (fingerprint.equals(pageFingerprint))
+            return pageScript;
+
+        final ByteArrayOutputStream css = new ByteArrayOutputStream();
+        append(css, getFreeThemeAsset(freeTheme));
+        append(css, getThemeAsset(theme));
+        append(css, hidePeople ? "hidepeople.css" : "showpeople.css");
+        append(css, "fb_bar.css");
+
+        pageScript = buildScript(css.toByteArray());
+        pageFingerprint = fingerprint;
+        return pageScript;
+    }
+
+    private static String getFreeThemeAsset(String freeTheme) {
+        switch (freeTheme) {
+            case "facebooktheme":
+                return "fbdefault.css";
+            case "materialtheme":
+                return "foliotheme.css";
+            case "folioclassic":
+                return "folioclassic.css";
+            case "darktheme":
+                return "black.css";
+            case "draculatheme":
+                return "dracula.css";
+            default:
+                return null;
+        }
+    }
+
+    private static String getThemeAsset(String theme) {
+        switch (theme) {
+            case "pink":
+                return "pink_theme.css";
+            case "bluegrey":
+                return "blue_grey.css";
+            default:
+                return null;
+        }
+    }
+
+    private void append(ByteArrayOutputStream css, String asset) {
+        if (asset == null)
+            return;
+        final byte[] bytes = readAsset(asset);
+        css.write(bytes, 0, bytes.length);
+        css.write('\n');
+    }
+
+    private byte[] readAsset(String asset) {
+        byte[] bytes = assets.get(asset);
+        if (bytes != null)
+            return bytes;
+        try {
+            InputStream inputStream = context.getAssets().open(asset);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(inputStream.available());
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            inputStream.close();
+            bytes = out.toByteArray();
+        } catch (IOException e) {
+            Log.e(TAG, "could not read " + asset, e);
+            bytes = new byte[0];
+        }
+        assets.put(asset, bytes);
+        return bytes;
+    }
+
+    private static String buildScript(byte[] css) {
+        return "(function() {var parent = document.getElementsByTagName('head').item(0);var style = document.createElement('style');style.type = 'text/css';style.innerHTML = window.atob('"
+                + Base64.encodeToString(css, Base64.NO_WRAP) + "');parent.appendChild(style)})()";
+    }
+
+    private static void inject(WebView webView, String script) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+            webView.evaluateJavascript(script, null);
+        else
+            webView.loadUrl("javascript:" + script);
+    }
+}
@@ -0,0 +1,415 @@
+package com.creativtrendz.folio.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Finds a few elements in an HTML stream without building a document.
+ * <p>
+ * Every target is a chain of simple selectors matched as descendants of each other, the same as
+ * chained Jsoup {@code select()} calls. A simple selector is {@code tag#id.class[attr*=value]}
+ * where every part is optional. For each target the first matching element wins, either its text
+ * or one of its attributes is kept. Reading stops as soon as all targets are found, so the rest of
+ * the page is never read.
+ */
+public class HtmlStreamMatcher {
+
+    private static final String[] VOID_ELEMENTS = {"area", "base", "br", "col", "embed", "hr", "img",
+            "input", "link", "meta", "param", "source", "track", "wbr"};
+
+    private static final class Step {
+        String tag;
+        String id;
+        final List<String> classes = new ArrayList<>();
+        String attribute;
+        String attributeContains;
+
+        boolean matches(String name, Map<String, String> attributes) {
+            if (tag != null && !tag.equals(name))
+                return false;
+            if (id != null && !id.equals(attributes.get("id")))
+                return false;
+            if (!classes.isEmpty()) {
+                final String classAttribute = attributes.get("class");
+                if (classAttribute == null)
+                    return false;
+                for (String cls : classes)
+                    if (!hasClass(classAttribute, cls))
+                        return false;
+            }
+            if (attribute != null) {
+                final String value = attributes.get(attribute);
+                if (value == null || !value.contains(attributeContains))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class Target {
+        final Step[] steps;
+        final String attribute;
+        final StringBuilder text = new StringBuilder();
+        int captureDepth = -1;
+        String value;
+
+        Target(Step[] steps, String attribute) {
+            this.steps = steps;
+            this.attribute = attribute;
+        }
+    }
+
+    private static final class Frame {
+        final String name;
+        final int[] progress;
+
+        Frame(String name, int[] progress) {
+            this.name = name;
+            this.progress = progress;
+        }
+    }
+
+    private final List<Target> targets = new ArrayList<>();
+    private final List<Frame> stack = new ArrayList<>();
+    private int found;
+
+    /**
+     * @param selector  descendant chain, e.g. {@code "div#viewport span._59tg"}
+     * @param attribute attribute to keep or null to keep the text of the element
+     * @return index of the target for {@link #get(int)}
+     */
+    public int add(String selector, String attribute) {
+        targets.add(new Target(parseSelector(selector), attribute));
+        return targets.size() - 1;
+    }
+
+    /** @return the text or attribute of the target or null if it wasn't found */
+    public String get(int target) {
+        return targets.get(target).value;
+    }
+
+    /** Reads until all targets are found or the stream ends. The reader is not closed. */
+    public void match(Reader in) throws IOException {
+        stack.clear();
+        found = 0;
+        for (Target target : targets) {
+            target.value = null;
+            target.captureDepth = -1;
+            target.text.setLength(0);
+        }
+
+        int c;
+        while (found < targets.size() && (c = in.read()) != -1) {
+            if (c == '<')
+                readMarkup(in);
+            else
+                appendText((char) c);
+        }
+
+        // the document ended inside a captured element
+        for (Target target : targets)
+            if (target.captureDepth >= 0)
+                finish(target, decode(target.text.toString().trim()));
+    }
+
+    private void readMarkup(Reader in) throws IOException {
+        final int c = in.read();
+        if (c == -1)
+            return;
+        if (c == '!') {
+            skipDeclaration(in);
+        } else if (c == '?') {
+            skipTo(in, '>');
+        } else if (c == '/') {
+            final StringBuilder name = new StringBuilder();
+            final int last = readName(in, name, -1);
+            if (last != '>')
+                skipTo(in, '>');
+            endElement(name.toString().toLowerCase(Locale.US));
+        } else if (Character.isLetter(c)) {
+            readStartTag(in, c);
+        } else {
+            // a lone '<' is text
+            appendText('<');
+            if (c != '<')
+                appendText((char) c);
+        }
+    }
+
+    private void readStartTag(Reader in, int first) throws IOException {
+        final StringBuilder buffer = new StringBuilder();
+        int c = readName(in, buffer, first);
+        final String name = buffer.toString().toLowerCase(Locale.US);
+        final Map<String, String> attributes = new HashMap<>();
+        boolean selfClosing = false;
+
+        while (c != -1 && c != '>') {
+            if (c == '/') {
+                selfClosing = true;
+                c = in.read();
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                c = in.read();
+                continue;
+            }
+            selfClosing = false;
+            buffer.setLength(0);
+            c = readName(in, buffer, c);
+            final String attributeName = buffer.toString().toLowerCase(Locale.US);
+            while (c != -1 && Character.isWhitespace(c))
+                c = in.read();
+            String value = "";
+            if (c == '=') {
+                c = in.read();
+                while (c != -1 && Character.isWhitespace(c))
+                    c = in.read();
+                buffer.setLength(0);
+                if (c == '"' || c == '\'') {
+                    final int quote = c;
+                    while ((c = in.read()) != -1 && c != quote)
+                        buffer.append((char) c);
+                    c = in.read();
+                } else {
+                    while (c != -1 && c != '>' && !Character.isWhitespace(c)) {
+                        buffer.append((char) c);
+                        c = in.read();
+                    }
+                }
+                value = decode(buffer.toString());
+            }
+            if (attributeName.length() > 0 && !attributes.containsKey(attributeName))
+                attributes.put(attributeName, value);
+        }
+
+        // the content of these is not HTML and may contain anything, '<' included
+        final boolean rawText = !selfClosing && (name.equals("script") || name.equals("style"));
+        startElement(name, attributes, selfClosing || rawText || isVoid(name));
+        if (rawText)
+            skipRawText(in, name);
+    }
+
+    private void startElement(String name, Map<String, String> attributes, boolean empty) {
+        final int[] parent = stack.isEmpty() ? null : stack.get(stack.size() - 1).progress;
+        final int[] progress = new int[targets.size()];
+
+        for (int i = 0; i < targets.size(); i++) {
+            final Target target = targets.get(i);
+            int matched = parent == null ? 0 : parent[i];
+            if (target.value != null || target.captureDepth >= 0 || matched == target.steps.length) {
+                progress[i] = matched;
+                continue;
+            }
+            if (target.steps[matched].matches(name, attributes))
+                matched++;
+            progress[i] = matched;
+
+            if (matched == target.steps.length) {
+                if (target.attribute != null) {
+                    final String value = attributes.get(target.attribute);
+                    if (value != null)
+                        finish(target, value);
+                    else
+                        progress[i] = matched - 1;
+                } else if (empty) {
+                    finish(target, "");
+                } else {
+                    target.captureDepth = stack.size();
+                }
+            }
+        }
+
+        if (!empty)
+            stack.add(new Frame(name, progress));
+    }
+
+    private void endElement(String name) {
+        // close everything up to the nearest open element of this name, like a forgiving parser would
+        int index = stack.size() - 1;
+        while (index >= 0 && !stack.get(index).name.equals(name))
+            index--;
+        if (index < 0)
+            return;
+
+        for (Target target : targets)
+            if (target.captureDepth >= index)
+                finish(target, decode(target.text.toString().trim()));
+        while (stack.size() > index)
+            stack.remove(stack.size() - 1);
+    }
+
+    private void finish(Target target, String value) {
+        target.captureDepth = -1;
+        if (target.value == null) {
+            target.value = value;
+            found++;
+        }
+    }
+
+    private void appendText(char c) {
+        for (Target target : targets)
+            if (target.captureDepth >= 0)
+                target.text.append(c);
+    }
+
+    private void skipDeclaration(Reader in) throws IOException {
+        int c = in.read();
+        if (c == '-') {
+            c = in.read();
+            if (c == '-') {
+                // comment, ends with -->
+                int dashes = 0;
+                while ((c = in.read()) != -1) {
+                    if (c == '>' && dashes >= 2)
+                        return;
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+                return;
+            }
+        }
+        if (c != '>' && c != -1)
+            skipTo(in, '>');
+    }
+
+    private static void skipRawText(Reader in, String name) throws IOException {
+        final String end = "</" + name;
+        int matched = 0;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (Character.toLowerCase(c) == end.charAt(matched)) {
+                if (++matched == end.length()) {
+                    skipTo(in, '>');
+                    return;
+                }
+            } else {
+                matched = c == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    private static void skipTo(Reader in, char end) throws IOException {
+        int c;
+        while ((c = in.read()) != -1 && c != end) {
+            // skip
+        }
+    }
+
+    // appends the name starting with first (or the next char if first is -1), returns the char after it
+    private static int readName(Reader in, StringBuilder name, int first) throws IOException {
+        int c = first == -1 ? in.read() : first;
+        while (c != -1 && c != '>' && c != '/' && c != '=' && !Character.isWhitespace(c)) {
+            name.append((char) c);
+            c = in.read();
+        }
+        return c;
+    }
+
+    private static boolean isVoid(String name) {
+        for (String element : VOID_ELEMENTS)
+            if (element.equals(name))
+                return true;
+        return false;
+    }
+
+    private static boolean hasClass(String classAttribute, String cls) {
+        int from = 0;
+        while ((from = classAttribute.indexOf(cls, from)) != -1) {
+            final int end = from + cls.length();
+            if ((from == 0 || Character.isWhitespace(classAttribute.charAt(from - 1)))
+                    && (end == classAttribute.length() || Character.isWhitespace(classAttribute.charAt(end))))
+                return true;
+            from = end;
+        }
+        return false;
+    }
+
+    // tag#id.class[attr*=value], separated by spaces
+    private static Step[] parseSelector(String selector) {
+        final String[] parts = selector.trim().split("\\s+");
+        final Step[] steps = new Step[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            final String part = parts[i];
+            final Step step = new Step();
+            int pos = 0;
+            int start = pos;
+            while (pos < part.length() && "#.[".indexOf(part.charAt(pos)) == -1)
+                pos++;
+            if (pos > start)
+                step.tag = part.substring(start, pos).toLowerCase(Locale.US);
+            while (pos < part.length()) {
+                final char kind = part.charAt(pos++);
+                start = pos;
+                if (kind == '[') {
+                    final int close = part.indexOf(']', pos);
+                    final String condition = part.substring(pos, close);
+                    final int operator = condition.indexOf("*=");
+                    step.attribute = condition.substring(0, operator).toLowerCase(Locale.US);
+                    step.attributeContains = condition.substring(operator + 2);
+                    pos = close + 1;
+                    continue;
+                }
+                while (pos < part.length() && "#.[".indexOf(part.charAt(pos)) == -1)
+                    pos++;
+                if (kind == '#')
+                    step.id = part.substring(start, pos);
+                else
+                    step.classes.add(part.substring(start, pos));
+            }
+            steps[i] = step;
+        }
+        return steps;
+    }
+
+    // the entities that show up in attributes and counters
+    static String decode(String text) {
+        if (text.indexOf('&') == -1)
+            return text;
+        final StringBuilder decoded = new StringBuilder(text.length());
+        int pos = 0;
+        while (pos < text.length()) {
+            final char c = text.charAt(pos);
+            final int semicolon = c == '&' ? text.indexOf(';', pos) : -1;
+            if (semicolon == -1 || semicolon - pos > 10) {
+                decoded.append(c);
+                pos++;
+                continue;
+            }
+            final String entity = text.substring(pos + 1, semicolon);
+            String replacement = null;
+            if (entity.equals("amp"))
+                replacement = "&";
+            else if (entity.equals("lt"))
+                replacement = "<";
+            else if (entity.equals("gt"))
+                replacement = ">";
+            else if (entity.equals("quot"))
+                replacement = "\"";
+            else if (entity.equals("apos"))
+                replacement = "'";
+            else if (entity.equals("nbsp"))
+                replacement = "\u00a0";
+            else if (entity.startsWith("#")) {
+                try {
+                    final int codePoint = entity.startsWith("#x") || entity.startsWith("#X")
+                            ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+                    replacement = new String(Character.toChars(codePoint));
+                } catch (IllegalArgumentException ex) {
+                    replacement = null;
+                }
+            }
+            if (replacement == null) {
+                decoded.append(c);
+                pos++;
+            } else {
+                decoded.append(replacement);
+                pos = semicolon + 1;
+            }
+        }
+        return decoded.toString();
+    }
+}
@@ -0,0 +1,259 @@
+package com.creativtrendz.folio.utils;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background sink for the file log.
+ * <p>
+ * Callers only put a record into a bounded lock-free ring buffer. A single writer thread keeps
+ * the log file open, writes the records in batches and flushes once a batch is full or the flush
+ * interval passed. When the file grows above the size limit it is rotated to {@code .old}.
+ * Records that don't fit into the buffer are dropped and counted. Every rotation starts the new
+ * file with the counters and flush times so far.
+ */
+public final class LogWriter {
+
+    private static final String TAG = "LogWriter";
+    private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+    private static final int CAPACITY = 1024;                   // must be a power of two
+    private static final int BATCH_SIZE = 64;
+    private static final long FLUSH_INTERVAL_MS = 2000;
+
+    public interface StorageCheck {
+        /** called on the writer thread before the log file is opened */
+        boolean isStorageReady();
+    }
+
+    private static final class Record {
+        final long time;
+        final String tag;
+        final String msg;
+
+        Record(long time, String tag, String msg) {
+            this.time = time;
+            this.tag = tag;
+            this.msg = msg;
+        }
+    }
+
+    private final AtomicReferenceArray<Record> ring = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong tail = new AtomicLong();            // next slot to claim
+    private volatile long head;                                 // next slot to read, writer only
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushNanosTotal = new AtomicLong();
+    private volatile long lastFlushNanos;
+
+    private final String logFilePath;
+    private final long fileSizeLimit;
+    private final StorageCheck storageCheck;
+    private final Thread writerThread;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat(TIMESTAMP_FORMAT, Locale.getDefault());
+    private final Date date = new Date();
+
+    private File logFile;
+    private BufferedWriter writer;
+    private long fileSize;
+
+    public LogWriter(String logFilePath, long fileSizeLimit, StorageCheck storageCheck) {
+        this.logFilePath = logFilePath;
+        this.fileSizeLimit = fileSizeLimit;
+        this.storageCheck = storageCheck;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, TAG);
+        writerThread.setDaemon(true);
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a line for the log file. Never blocks, the record is dropped if the buffer is full.
+     *
+     * @return false if the record was dropped
+     */
+    public boolean offer(String tag, String msg) {
+        final Record record = new Record(System.currentTimeMillis(), tag, msg);
+        long slot;
+        do {
+            slot = tail.get();
+            if (slot - head >= CAPACITY) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(slot, slot + 1));
+        ring.set((int) slot & (CAPACITY - 1), record);
+
+        if (slot - head + 1 >= BATCH_SIZE)
+            LockSupport.unpark(writerThread);
+        return true;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /** @return duration of the last flush in microseconds */
+    public long getLastFlushMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastFlushNanos);
+    }
+
+    /** @return average flush duration in microseconds */
+    public long getAverageFlushMicros() {
+        final long count = flushes.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(flushNanosTotal.get() / count);
+    }
+
+    private void writeLoop() {
+        long lastFlush = System.currentTimeMillis();
+        int pending = 0;
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            final Record record = poll();
+            if (record != null) {
+                if (write(record))
+                    pending++;
+                if (pending < BATCH_SIZE)
+                    continue;
+            }
+
+            final long now = System.currentTimeMillis();
+            if (pending > 0 && (pending >= BATCH_SIZE || now - lastFlush >= FLUSH_INTERVAL_MS)) {
+                flush();
+                written.addAndGet(pending);
+                pending = 0;
+                lastFlush = now;
+            }
+            if (record == null)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pending > 0
+                        ? Math.max(1, FLUSH_INTERVAL_MS - (now - lastFlush)) : FLUSH_INTERVAL_MS));
+        }
+    }
+
+    private Record poll() {
+        final long slot = head;
+        if (slot >= tail.get())
+            return null;
+        final int index = (int) slot & (CAPACITY - 1);
+        Record record;
+        // the slot is claimed but the producer may not have stored the record yet
+        while ((record = ring.get(index)) == null)
+            Thread.yield();
+        ring.set(index, null);
+        head = slot + 1;
+        return record;
+    }
+
+    private boolean write(Record record) {
+        if (writer == null && !open()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        try {
+            date.setTime(record.time);
+            final String line = dateFormat.format(date) + " " + record.tag + ": " + record.msg;
+            writer.write(line);
+            writer.newLine();
+            fileSize += line.length() + 1;
+            if (fileSize > fileSizeLimit)
+                rotate();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+            close();
+            dropped.incrementAndGet();
+            return false;
+        }
+    }
+
+    private boolean open() {
+        if (!storageCheck.isStorageReady())
+            return false;
+        try {
+            logFile = new File(logFilePath);
+            fileSize = logFile.length();
+            writer = new BufferedWriter(new FileWriter(logFile, true));
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+            writer = null;
+            return false;
+        }
+    }
+
+    private void rotate() {
+        close();
+        final File old = new File(logFilePath + ".old");
+        if (old.exists())
+            //noinspection ResultOfMethodCallIgnored
+            old.delete();
+        //noinspection ResultOfMethodCallIgnored
+        logFile.renameTo(old);
+        if (open())
+            writeStats();
+    }
+
+    private void writeStats() {
+        final String stats = "written=" + getWrittenCount() + ", dropped=" + getDroppedCount()
+                + ", last flush=" + getLastFlushMicros() + "us, average flush="
+                + getAverageFlushMicros() + "us";
+        Log.i(TAG, stats);
+        try {
+            date.setTime(System.currentTimeMillis());
+            final String line = dateFormat.format(date) + " " + TAG + ": " + stats;
+            writer.write(line);
+            writer.newLine();
+            fileSize += line.length() + 1;
+        } catch (IOException e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+            close();
+        }
+    }
+
+    private void flush() {
+        if (writer == null)
+            return;
+        final long start = System.nanoTime();
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+            close();
+        }
+        lastFlushNanos = System.nanoTime() - start;
+        flushNanosTotal.addAndGet(lastFlushNanos);
+        flushes.incrementAndGet();
+    }
+
+    private void close() {
+        if (writer == null)
+            return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+        }
+        writer = null;
+    }
+}
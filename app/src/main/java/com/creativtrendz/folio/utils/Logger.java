@@ -3,6 +3,7 @@ package com.creativtrendz.folio.utils;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.database.ContentObserver;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Message;
@@ -11,6 +12,7 @@ import android.util.Log;
 import android.widget.Toast;
 
 import net.grandcentrix.tray.TrayAppPreferences;
+import net.grandcentrix.tray.provider.TrayProviderHelper;
 
 
 
@@ -25,16 +27,40 @@ public final class Logger {
 
     private static volatile Logger instance;
     private static final int MSG_SHOW_TOAST = 1;
+    private static final String NOTIFY_KEY = "notify";
+    private static final long FILE_SIZE_LIMIT = 1000000;  // 1 megabyte
     private static final Context context = FolioApplication.getContextOfApplication();
     private final TrayAppPreferences trayPreferences;
-    private final String logFilePath;
     private final MyHandler messageHandler;
+    private final LogWriter logWriter;
+    private volatile boolean fileLoggingEnabled;
 
     private Logger() {
         messageHandler = new MyHandler(this);
         trayPreferences = new TrayAppPreferences(context);
-        logFilePath = Environment.getExternalStorageDirectory().getAbsolutePath()
+        final String logFilePath = Environment.getExternalStorageDirectory().getAbsolutePath()
                 + File.separator + context.getString(R.string.app_name).replace(" ", "") + ".log";
+        logWriter = new LogWriter(logFilePath, FILE_SIZE_LIMIT, new LogWriter.StorageCheck() {
+            @Override
+            public boolean isStorageReady() {
+                final boolean mounted = Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState());
+                if (mounted && checkStoragePermission())
+                    return true;
+                displayStoragePermissionRefused();
+                return false;
+            }
+        });
+
+        // keep the flag in sync instead of asking Tray on every log line
+        fileLoggingEnabled = trayPreferences.getBoolean(NOTIFY_KEY, false);
+        context.getContentResolver().registerContentObserver(
+                new TrayProviderHelper(context).getUri(context.getPackageName(), NOTIFY_KEY), false,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        fileLoggingEnabled = trayPreferences.getBoolean(NOTIFY_KEY, false);
+                    }
+                });
     }
 
     public static Logger getInstance() {
@@ -78,22 +104,15 @@ public final class Logger {
         messageHandler.sendMessage(msg);
     }
 
-    public synchronized void i(String tag, String msg) {
-        final boolean fileLoggingEnabled = trayPreferences.getBoolean("notify", false);
-        final boolean mounted = Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState());
-        final boolean storageReady = mounted && checkStoragePermission();
-
-        if (fileLoggingEnabled && storageReady) {
-            FileLogger.open(logFilePath, Log.VERBOSE, 1000000);  // 1 megabyte
-            FileLogger.i(tag, msg);
-            FileLogger.close();
-        } else if (fileLoggingEnabled) {
-            displayStoragePermissionRefused();
-            Log.i(tag, msg);
-        } else {
-            // use a standard logger instead
-            Log.i(tag, msg);
-        }
+    public void i(String tag, String msg) {
+        // the file is written by the LogWriter thread, the caller never touches the disk
+        if (fileLoggingEnabled)
+            logWriter.offer(tag, msg);
+        Log.i(tag, msg);
+    }
+
+    public LogWriter getLogWriter() {
+        return logWriter;
     }
 
 }
\ No newline at end of file
@@ -161,10 +161,11 @@ public class TrayProviderHelper {
      * @param key         key for mapping
      * @param previousKey key used before migration
      * @param value       data to save
+     * @return true if the provider saved the data and notified its observers
      */
-    public void persist(@NonNull final String module, @NonNull final String key,
+    public boolean persist(@NonNull final String module, @NonNull final String key,
             @Nullable final String previousKey, @Nullable final String value) {
-        persist(module, key, previousKey, value, false);
+        return persist(module, key, previousKey, value, false);
     }
 
     /**
@@ -214,7 +215,7 @@ public class TrayProviderHelper {
      * @param previousKey key before the migration
      * @param internal    where to save
      */
-    private void persist(@NonNull final String module, @NonNull final String key,
+    private boolean persist(@NonNull final String module, @NonNull final String key,
             @Nullable final String previousKey, @Nullable final String value,
             final boolean internal) {
 
@@ -227,6 +228,6 @@ public class TrayProviderHelper {
         ContentValues values = new ContentValues();
         values.put(TrayContract.Preferences.Columns.VALUE, value);
         values.put(TrayContract.Preferences.Columns.MIGRATED_KEY, previousKey);
-        mContext.getContentResolver().insert(uri, values);
+        return mContext.getContentResolver().insert(uri, values) != null;
     }
 }
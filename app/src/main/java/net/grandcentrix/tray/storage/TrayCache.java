@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015 grandcentrix GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.grandcentrix.tray.storage;
+
+import net.grandcentrix.tray.provider.TrayItem;
+import net.grandcentrix.tray.provider.TrayProviderHelper;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process wide snapshot of all items of a single module.
+ * <p>
+ * The first read loads every row of the module with a single query. Following reads are served
+ * from memory without touching the {@link net.grandcentrix.tray.provider.TrayProvider}. Writes
+ * update the snapshot first and are then persisted to the provider.
+ * <p>
+ * A {@link ContentObserver} on the module uri keeps the snapshot in sync with writes from other
+ * processes. A change of a single key marks only this key as stale, a change of the whole module
+ * drops the snapshot and the next read loads it again. The provider notifies the writes of this
+ * process as well, the snapshot already reflects them, so their notifications are skipped.
+ */
+public class TrayCache {
+
+    private static final Map<String, TrayCache> sCaches = new HashMap<>();
+
+    private final Context mContext;
+
+    private final Map<String, TrayItem> mItems = new HashMap<>();
+
+    private final String mModule;
+
+    private final Uri mModuleUri;
+
+    private final TrayProviderHelper mProviderHelper;
+
+    private final Set<String> mStaleKeys = new HashSet<>();
+
+    // notifications still to come for writes of this process, by key
+    private final Map<String, Integer> mPendingKeyChanges = new HashMap<>();
+
+    private int mPendingModuleChanges = 0;
+
+    private boolean mLoaded = false;
+
+    private TrayCache(@NonNull final Context context, @NonNull final String module) {
+        mContext = context;
+        mModule = module;
+        mProviderHelper = new TrayProviderHelper(context);
+        mModuleUri = mProviderHelper.getUri(module);
+
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(final boolean selfChange) {
+                invalidate();
+            }
+
+            @Override
+            public void onChange(final boolean selfChange, final Uri uri) {
+                invalidate(uri);
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(mModuleUri, true, observer);
+    }
+
+    /**
+     * @param context any context, the application context is used internally
+     * @param module  module name
+     * @return the cache shared by all storages of the given module in this process
+     */
+    @NonNull
+    public static TrayCache forModule(@NonNull final Context context,
+            @NonNull final String module) {
+        synchronized (sCaches) {
+            TrayCache cache = sCaches.get(module);
+            if (cache == null) {
+                cache = new TrayCache(context.getApplicationContext(), module);
+                sCaches.put(module, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * removes all items of the module from the snapshot and the provider
+     */
+    public synchronized void clear() {
+        mItems.clear();
+        mStaleKeys.clear();
+        mLoaded = true;
+        mPendingKeyChanges.clear();
+        if (mContext.getContentResolver().delete(mModuleUri, null, null) > 0) {
+            mPendingModuleChanges++;
+        }
+    }
+
+    @Nullable
+    public synchronized TrayItem get(@NonNull final String key) {
+        ensureLoaded();
+        if (mStaleKeys.remove(key)) {
+            final List<TrayItem> prefs = mProviderHelper
+                    .queryProvider(mProviderHelper.getUri(mModule, key));
+            if (prefs.size() == 1) {
+                mItems.put(key, prefs.get(0));
+            } else {
+                mItems.remove(key);
+            }
+        }
+        return mItems.get(key);
+    }
+
+    @NonNull
+    public synchronized Collection<TrayItem> getAll() {
+        ensureLoaded();
+        if (!mStaleKeys.isEmpty()) {
+            // a full reload is as expensive as a single query
+            mLoaded = false;
+            ensureLoaded();
+        }
+        return new ArrayList<>(mItems.values());
+    }
+
+    /**
+     * updates the snapshot and persists the value afterwards
+     *
+     * @param key          where to save
+     * @param migrationKey where the data came from
+     * @param value        what to save
+     */
+    public synchronized void put(@NonNull final String key, @Nullable final String migrationKey,
+            @Nullable final String value) {
+        if (migrationKey != null) {
+            // the provider decides whether migrated data overrides the saved data
+            mStaleKeys.add(key);
+        } else {
+            final Date now = new Date();
+            final TrayItem previous = mLoaded && !mStaleKeys.contains(key)
+                    ? mItems.get(key) : null;
+            final Date created = previous != null ? previous.created() : now;
+            mItems.put(key, new TrayItem(mModule, key, null, value, created, now));
+        }
+        if (mProviderHelper.persist(mModule, key, migrationKey, value) && migrationKey == null) {
+            addPendingChange(key);
+        }
+    }
+
+    public synchronized void remove(@NonNull final String key) {
+        mItems.remove(key);
+        mStaleKeys.remove(key);
+        if (mContext.getContentResolver()
+                .delete(mProviderHelper.getUri(mModule, key), null, null) > 0) {
+            addPendingChange(key);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        final List<TrayItem> items = mProviderHelper.queryProvider(mModuleUri);
+        mItems.clear();
+        mStaleKeys.clear();
+        for (final TrayItem item : items) {
+            mItems.put(item.key(), item);
+        }
+        mLoaded = true;
+    }
+
+    private synchronized void invalidate() {
+        mLoaded = false;
+    }
+
+    private synchronized void invalidate(@Nullable final Uri uri) {
+        final List<String> segments = uri == null ? null : uri.getPathSegments();
+        // BASE/module/key changes a single item, everything else affects the whole module
+        if (segments != null && segments.size() == 3) {
+            final String key = segments.get(2);
+            if (consumePendingChange(key)) {
+                return;
+            }
+            if (mLoaded) {
+                mStaleKeys.add(key);
+            }
+        } else if (segments != null && segments.size() == 2 && mPendingModuleChanges > 0) {
+            mPendingModuleChanges--;
+        } else {
+            mLoaded = false;
+        }
+    }
+
+    // the observer runs on a binder thread and needs the lock of the cache, so a notification
+    // can't arrive before the write which caused it registered it here
+    private void addPendingChange(@NonNull final String key) {
+        final Integer pending = mPendingKeyChanges.get(key);
+        mPendingKeyChanges.put(key, pending == null ? 1 : pending + 1);
+    }
+
+    private boolean consumePendingChange(@NonNull final String key) {
+        final Integer pending = mPendingKeyChanges.get(key);
+        if (pending == null) {
+            return false;
+        }
+        if (pending == 1) {
+            mPendingKeyChanges.remove(key);
+        } else {
+            mPendingKeyChanges.put(key, pending - 1);
+        }
+        return true;
+    }
+}
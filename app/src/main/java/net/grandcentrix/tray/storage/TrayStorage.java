@@ -36,8 +36,9 @@ import java.util.List;
  * provider.
  * <p>
  * This class represents a simple key value storage solution based on a {@link
- * android.content.ContentProvider}. Replacing this class with a {@link java.util.HashMap}
- * implementation for testing works seamless.
+ * android.content.ContentProvider}. Reads and writes go through the process wide {@link TrayCache}
+ * of the module, so reading a preference usually doesn't query the provider. Replacing this
+ * class with a {@link java.util.HashMap} implementation for testing works seamless.
  */
 public class TrayStorage extends ModularizedStorage<TrayItem> {
 
@@ -45,12 +46,15 @@ public class TrayStorage extends ModularizedStorage<TrayItem> {
 
     private final Context mContext;
 
+    private final TrayCache mCache;
+
     private final TrayProviderHelper mProviderHelper;
 
     public TrayStorage(@NonNull final Context context, @NonNull final String module) {
         super(module);
         mContext = context.getApplicationContext();
         mProviderHelper = new TrayProviderHelper(mContext);
+        mCache = TrayCache.forModule(mContext, module);
     }
 
     public Context getContext() {
@@ -59,24 +63,19 @@ public class TrayStorage extends ModularizedStorage<TrayItem> {
 
     @Override
     public void clear() {
-        final Uri uri = mProviderHelper.getUri().buildUpon().appendPath(getModuleName())
-                .build();
-        mContext.getContentResolver().delete(uri, null, null);
+        mCache.clear();
     }
 
     @Override
     @Nullable
     public TrayItem get(@NonNull final String key) {
-        final Uri uri = mProviderHelper.getUri(getModuleName(), key);
-        final List<TrayItem> prefs = mProviderHelper.queryProvider(uri);
-        return prefs.size() == 1 ? prefs.get(0) : null;
+        return mCache.get(key);
     }
 
     @NonNull
     @Override
     public Collection<TrayItem> getAll() {
-        final Uri uri = mProviderHelper.getUri(getModuleName());
-        return mProviderHelper.queryProvider(uri);
+        return mCache.getAll();
     }
 
     @Override
@@ -109,7 +108,7 @@ public class TrayStorage extends ModularizedStorage<TrayItem> {
     public void put(@NonNull final String key, @Nullable final String migrationKey,
             @Nullable final Object data) {
         String value = data == null ? null : String.valueOf(data);
-        mProviderHelper.persist(getModuleName(), key, migrationKey, value);
+        mCache.put(key, migrationKey, value);
     }
 
     @Override
@@ -119,8 +118,7 @@ public class TrayStorage extends ModularizedStorage<TrayItem> {
             throw new IllegalArgumentException(
                     "null is not valid. use clear to delete all preferences");
         }
-        final Uri uri = mProviderHelper.getUri(getModuleName(), key);
-        mContext.getContentResolver().delete(uri, null, null);
+        mCache.remove(key);
     }
 
     @Override
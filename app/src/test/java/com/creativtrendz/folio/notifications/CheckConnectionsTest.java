@@ -0,0 +1,127 @@
+package com.creativtrendz.folio.notifications;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckConnectionsTest {
+
+    /** Records whether it was disconnected, it is never connected. */
+    private static class FakeConnection extends HttpURLConnection {
+        boolean disconnected;
+
+        FakeConnection() throws IOException {
+            super(new URL("https://m.facebook.com/"));
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+        }
+    }
+
+    /** A response body which counts the bytes read and records whether it was closed. */
+    private static class Body extends ByteArrayInputStream {
+        boolean closed;
+
+        Body(int length) {
+            super(new byte[length]);
+        }
+
+        int getBytesRead() {
+            return pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    @Test
+    public void drainsAndClosesAShortRemainder() throws Exception {
+        final FakeConnection connection = new FakeConnection();
+        final Body body = new Body(10000);
+        body.read(new byte[100]);
+
+        CheckConnections.release(connection, body);
+
+        assertEquals(10000, body.getBytesRead());
+        assertTrue(body.closed);
+        assertFalse(connection.disconnected);
+    }
+
+    @Test
+    public void closesAFullyReadResponse() throws Exception {
+        final FakeConnection connection = new FakeConnection();
+        final Body body = new Body(200000);
+        body.read(new byte[200000]);
+
+        CheckConnections.release(connection, body);
+
+        assertTrue(body.closed);
+        assertFalse(connection.disconnected);
+    }
+
+    @Test
+    public void disconnectsFromALongRemainder() throws Exception {
+        final FakeConnection connection = new FakeConnection();
+        final Body body = new Body(200000);
+        body.read(new byte[100]);
+
+        CheckConnections.release(connection, body);
+
+        assertTrue("read " + body.getBytesRead(), body.getBytesRead() < 100 + 32 * 1024);
+        assertTrue(body.closed);
+        assertTrue(connection.disconnected);
+    }
+
+    @Test
+    public void disconnectsWithoutAResponse() throws Exception {
+        final FakeConnection connection = new FakeConnection();
+
+        CheckConnections.release(connection, null);
+
+        assertTrue(connection.disconnected);
+    }
+
+    @Test
+    public void disconnectsIfTheBodyFails() throws Exception {
+        final FakeConnection connection = new FakeConnection();
+        final InputStream body = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+
+        CheckConnections.release(connection, body);
+
+        assertTrue(connection.disconnected);
+    }
+
+    @Test
+    public void opensWithTheTimeout() throws Exception {
+        final HttpURLConnection connection = CheckConnections.open(new URL("https://m.facebook.com/"), 1234);
+        assertEquals(1234, connection.getConnectTimeout());
+        assertEquals(1234, connection.getReadTimeout());
+    }
+}
@@ -0,0 +1,116 @@
+package com.creativtrendz.folio.utils;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Compares HtmlStreamMatcher with the Jsoup document and chained select() calls the checkers used before, on the
+ * recorded mobile page. Prints the time and the allocated bytes per page of both, and the heap a parsed page
+ * keeps alive, which is the document for Jsoup and the peak of its heap use.
+ * <p>
+ * Not a test, run its main method on the JVM, e.g. from the IDE.
+ */
+public class HtmlStreamMatcherBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 500;
+
+    private interface Scraper {
+        Object scrape(byte[] page) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final byte[] page = readFixture(HtmlStreamMatcherTest.MOBILE_PAGE);
+        System.out.println(String.format("page: %d bytes", page.length));
+
+        run("HtmlStreamMatcher", page, new Scraper() {
+            @Override
+            public Object scrape(byte[] page) throws Exception {
+                final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+                final int messages = matcher.add(HtmlStreamMatcherTest.MESSAGES_JEWEL, null);
+                matcher.add(HtmlStreamMatcherTest.NOTIFICATIONS_JEWEL, null);
+                matcher.add(HtmlStreamMatcherTest.FEED_LINK, "href");
+                matcher.match(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(page), "UTF-8")));
+                check(matcher.get(messages));
+                return matcher;
+            }
+        });
+        run("Jsoup", page, new Scraper() {
+            @Override
+            public Object scrape(byte[] page) throws Exception {
+                final Document document = Jsoup.parse(new ByteArrayInputStream(page), "UTF-8", "https://m.facebook.com");
+                final String messages = document.select("div#viewport").select("div#page").select("div._129-")
+                        .select("#messages_jewel").select("span._59tg").html();
+                document.select("div#viewport").select("div#page").select("div._129-")
+                        .select("#notifications_jewel").select("span._59tg").html();
+                document.select("a[href*=rss20]").attr("href");
+                check(messages);
+                return document;
+            }
+        });
+    }
+
+    private static void check(String messages) {
+        if (!"3".equals(messages))
+            throw new AssertionError("unexpected message count " + messages);
+    }
+
+    private static void run(String name, byte[] page, Scraper scraper) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            scraper.scrape(page);
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long allocatedBefore = allocatedBytes(threads);
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++)
+            scraper.scrape(page);
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes(threads) - allocatedBefore;
+
+        final long heapBefore = usedHeap();
+        final Object result = scraper.scrape(page);
+        final long retained = usedHeap() - heapBefore;
+
+        System.out.println(String.format("%s: %d us/page%s, %d KB kept alive by %s", name, elapsed / ROUNDS / 1000,
+                allocatedBefore >= 0 ? String.format(", %d KB allocated/page", allocated / ROUNDS / 1024) : "",
+                Math.max(0, retained) / 1024, result.getClass().getSimpleName()));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static byte[] readFixture(String name) throws Exception {
+        final InputStream stream = HtmlStreamMatcherBenchmark.class.getResourceAsStream(name);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return out.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+    // -1 if the JVM can't count the allocations of a thread
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
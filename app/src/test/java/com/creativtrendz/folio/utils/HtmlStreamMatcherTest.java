@@ -0,0 +1,257 @@
+package com.creativtrendz.folio.utils;
+
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class HtmlStreamMatcherTest {
+
+    // the selectors of FacebookPageScraper
+    static final String MESSAGES_JEWEL = "div#viewport div#page div._129- #messages_jewel span._59tg";
+    static final String NOTIFICATIONS_JEWEL = "div#viewport div#page div._129- #notifications_jewel span._59tg";
+    static final String FEED_LINK = "a[href*=rss20]";
+    static final String DESKTOP_FEED_LINK = "div._li div#globalContainer div.fwn a[href*=rss20]";
+
+    static final String MOBILE_PAGE = "m_facebook_home.html";
+    static final String DESKTOP_PAGE = "www_facebook_notifications.html";
+
+    private static final String FEED_HREF = "/feeds/notifications.php?id=100004432512098&viewer=100004432512098"
+            + "&key=AWhWnOyE6xT6DNoE&format=rss20";
+
+    static Reader openFixture(String name) throws IOException {
+        final InputStream stream = HtmlStreamMatcherTest.class.getResourceAsStream(name);
+        assertNotNull("missing test resource " + name, stream);
+        return new InputStreamReader(stream, "UTF-8");
+    }
+
+    private static String matchText(String html, String selector) throws IOException {
+        final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+        final int target = matcher.add(selector, null);
+        matcher.match(new StringReader(html));
+        return matcher.get(target);
+    }
+
+    private static String matchAttribute(String html, String selector, String attribute) throws IOException {
+        final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+        final int target = matcher.add(selector, attribute);
+        matcher.match(new StringReader(html));
+        return matcher.get(target);
+    }
+
+    /** Counts the characters read and whether the end of the stream was reached. */
+    private static class CountingReader extends FilterReader {
+        long count;
+        boolean reachedEnd;
+
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int c = super.read();
+            if (c == -1)
+                reachedEnd = true;
+            else
+                count++;
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read == -1)
+                reachedEnd = true;
+            else
+                count += read;
+            return read;
+        }
+    }
+
+    @Test
+    public void findsJewelsAndFeedLinkOnMobilePage() throws Exception {
+        final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+        final int messages = matcher.add(MESSAGES_JEWEL, null);
+        final int notifications = matcher.add(NOTIFICATIONS_JEWEL, null);
+        final int feed = matcher.add(FEED_LINK, "href");
+
+        final Reader in = openFixture(MOBILE_PAGE);
+        try {
+            matcher.match(in);
+        } finally {
+            in.close();
+        }
+
+        assertEquals("3", matcher.get(messages));
+        assertEquals("12", matcher.get(notifications));
+        assertEquals(FEED_HREF, matcher.get(feed));
+    }
+
+    @Test
+    public void findsFeedLinkOnDesktopPage() throws Exception {
+        final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+        final int feed = matcher.add(DESKTOP_FEED_LINK, "href");
+
+        final Reader in = openFixture(DESKTOP_PAGE);
+        try {
+            matcher.match(in);
+        } finally {
+            in.close();
+        }
+
+        assertEquals(FEED_HREF, matcher.get(feed));
+    }
+
+    @Test
+    public void stopsReadingOnceAllTargetsAreFound() throws Exception {
+        final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+        matcher.add(MESSAGES_JEWEL, null);
+        matcher.add(NOTIFICATIONS_JEWEL, null);
+        matcher.add(FEED_LINK, "href");
+
+        final CountingReader in = new CountingReader(openFixture(MOBILE_PAGE));
+        try {
+            matcher.match(in);
+        } finally {
+            in.close();
+        }
+
+        // the jewels are in the header, the stories after them are never read
+        assertFalse(in.reachedEnd);
+        assertTrue("read " + in.count + " chars", in.count < 10000);
+    }
+
+    @Test
+    public void readsToTheEndIfATargetIsMissing() throws Exception {
+        final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+        final int messages = matcher.add(MESSAGES_JEWEL, null);
+        final int missing = matcher.add("div#viewport span.missing", null);
+
+        final CountingReader in = new CountingReader(openFixture(MOBILE_PAGE));
+        try {
+            matcher.match(in);
+        } finally {
+            in.close();
+        }
+
+        assertTrue(in.reachedEnd);
+        assertEquals("3", matcher.get(messages));
+        assertNull(matcher.get(missing));
+    }
+
+    @Test
+    public void voidElementsDoNotNest() throws Exception {
+        final String html = "<div id=a><p><img src=x.png><br><input type=hidden value=1><hr/></p>"
+                + "<span class=x>text</span></div>";
+        assertEquals("text", matchText(html, "div#a span.x"));
+        // the span is not a descendant of the img or the input
+        assertNull(matchText(html, "img span"));
+        assertNull(matchText(html, "input span"));
+        assertEquals("x.png", matchAttribute(html, "div#a p img", "src"));
+        assertEquals("", matchText(html, "div#a br"));
+    }
+
+    @Test
+    public void selfClosingElementsDoNotNest() throws Exception {
+        final String html = "<div id=a><i class=icon /><span>text</span></div>";
+        assertEquals("text", matchText(html, "div#a span"));
+        assertNull(matchText(html, "i.icon span"));
+    }
+
+    @Test
+    public void scriptIsRawText() throws Exception {
+        final String html = "<div id=a><script>var s = \"<span class='x'>script</span>\"; if (a < b) "
+                + "document.write('</div>');</script><span class=x>text</span></div>";
+        assertEquals("text", matchText(html, "div#a span.x"));
+        assertNull(matchText(html, "script span"));
+    }
+
+    @Test
+    public void styleIsRawText() throws Exception {
+        final String html = "<style>/* <div id=a><span class=x>style</span></div> */ .x > b { }</STYLE>"
+                + "<div id=a><span class=x>text</span></div>";
+        assertEquals("text", matchText(html, "div#a span.x"));
+    }
+
+    @Test
+    public void commentsAreSkipped() throws Exception {
+        final String html = "<div id=a><!-- <span class=x>comment</span> -- --><span class=x>text</span></div>";
+        assertEquals("text", matchText(html, "div#a span.x"));
+    }
+
+    @Test
+    public void decodesEntitiesInTextAndAttributes() throws Exception {
+        assertEquals("a & b < c > d \" e ' f A  g 😀",
+                matchText("<p>a &amp; b &lt; c &gt; d &quot; e &apos; f &#x41; &nbsp;g &#128512;</p>", "p"));
+        assertEquals("/x?a=1&b=2", matchAttribute("<a href=\"/x?a=1&amp;b=2\">", "a", "href"));
+    }
+
+    @Test
+    public void keepsUnknownAndBrokenEntities() throws Exception {
+        assertEquals("&foo; & bar &#xZZ; &", matchText("<p>&foo; & bar &#xZZ; &</p>", "p"));
+    }
+
+    @Test
+    public void matchesTextOfNestedElements() throws Exception {
+        assertEquals("a b c", matchText("<div id=a>a <b>b</b> <i>c</i></div>", "div#a"));
+    }
+
+    @Test
+    public void matchesClassesAndIdsOfOneElement() throws Exception {
+        final String html = "<div class=\"one two\">first</div><div class=\"one two three\" id=x>second</div>";
+        assertEquals("first", matchText(html, "div.two.one"));
+        assertEquals("second", matchText(html, "div.one.three"));
+        assertEquals("second", matchText(html, "#x.one"));
+        // no partial class names
+        assertNull(matchText(html, "div.tw"));
+    }
+
+    @Test
+    public void attributeSelectorIsAContainsMatch() throws Exception {
+        final String html = "<a href=/one>one</a><a href='/feeds/x?format=rss20'>feed</a>";
+        assertEquals("feed", matchText(html, "a[href*=rss20]"));
+        assertEquals("/feeds/x?format=rss20", matchAttribute(html, "a[href*=rss20]", "href"));
+    }
+
+    @Test
+    public void skipsMatchesWithoutTheWantedAttribute() throws Exception {
+        assertEquals("/two", matchAttribute("<div><a name=one>one</a><a href=/two>two</a></div>", "div a", "href"));
+    }
+
+    @Test
+    public void toleratesStrayAndUnclosedTags() throws Exception {
+        final String html = "<div id=a></p><p>one<p>two</span><span class=x>text</div><span class=x>outside</span>";
+        assertEquals("text", matchText(html, "div#a span.x"));
+        assertEquals("text", matchText(html, "span.x"));
+    }
+
+    @Test
+    public void tagsAndAttributeNamesAreCaseInsensitive() throws Exception {
+        assertEquals("text", matchText("<DIV ID=a><SPAN Class=x>text</SPAN></DIV>", "div#a span.x"));
+    }
+
+    @Test
+    public void matchCanBeRepeated() throws Exception {
+        final HtmlStreamMatcher matcher = new HtmlStreamMatcher();
+        final int target = matcher.add("span.x", null);
+
+        matcher.match(new StringReader("<span class=x>first</span>"));
+        assertEquals("first", matcher.get(target));
+        matcher.match(new StringReader("<span class=x>second</span>"));
+        assertEquals("second", matcher.get(target));
+        matcher.match(new StringReader("<span>none</span>"));
+        assertNull(matcher.get(target));
+    }
+
+    @Test
+    public void keepsTextOfAnElementTheDocumentEndsIn() throws Exception {
+        assertEquals("cut", matchText("<div id=a><span class=x>cut", "div#a span.x"));
+    }
+}
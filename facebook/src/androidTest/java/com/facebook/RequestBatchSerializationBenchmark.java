@@ -0,0 +1,150 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Serializes a batch of 50 multipart requests into a connection that only counts the bytes, and logs the
+ * throughput and the allocations per batch under the tag of the class. To compare with another version of the
+ * serializer, run it on both versions on the same device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RequestBatchSerializationBenchmark {
+    private static final String TAG = RequestBatchSerializationBenchmark.class.getSimpleName();
+
+    private static final int BATCH_SIZE = 50;
+    private static final int ATTACHMENT_SIZE = 16 * 1024;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 100;
+
+    @Test
+    public void serializeBatchOf50() throws Exception {
+        Settings.setApplicationId("1234567890");
+        RequestBatch batch = createBatch();
+
+        long length = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            length = serialize(batch);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            serialize(batch);
+        }
+        long elapsed = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        Log.i(TAG, String.format("batch of %d requests, %d bytes: %d us/batch, %.1f MB/s, "
+                        + "%d objects and %d bytes allocated/batch",
+                BATCH_SIZE, length, elapsed / ROUNDS / 1000, (length * ROUNDS * 1000.0) / elapsed,
+                Debug.getThreadAllocCount() / ROUNDS, Debug.getThreadAllocSize() / ROUNDS));
+    }
+
+    private static RequestBatch createBatch() {
+        List<Request> requests = new ArrayList<Request>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            byte[] photo = new byte[ATTACHMENT_SIZE];
+            for (int j = 0; j < photo.length; j++) {
+                photo[j] = (byte) (i + j);
+            }
+            Bundle parameters = new Bundle();
+            parameters.putString("message", "Photo " + i + " of the benchmark batch");
+            parameters.putString("place", "110506962309835");
+            parameters.putByteArray("source", photo);
+            requests.add(new Request(null, "me/photos", parameters, HttpMethod.POST));
+        }
+        return new RequestBatch(requests);
+    }
+
+    // returns the body length
+    private static long serialize(RequestBatch batch) throws Exception {
+        CountingConnection connection = new CountingConnection(new URL("https://graph.facebook.com/"));
+        Request.serializeToUrlConnection(batch, connection);
+        if (connection.fixedLength >= 0) {
+            assertEquals(connection.fixedLength, connection.output.count);
+        }
+        return connection.output.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int oneByte) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) {
+            this.count += count;
+        }
+    }
+
+    // a connection which is never opened, the body goes to a CountingOutputStream
+    private static class CountingConnection extends HttpURLConnection {
+        final CountingOutputStream output = new CountingOutputStream();
+        long fixedLength = -1;
+
+        CountingConnection(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode(int contentLength) {
+            super.setFixedLengthStreamingMode(contentLength);
+            fixedLength = contentLength;
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return output;
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs uploads against a {@link StandInVideoServer} on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResumableVideoUploadTest {
+    private static final int WINDOW = 64 * 1024;
+    private static final int FILE_LENGTH = 200 * 1000;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private Context context;
+    private HttpTransport previousTransport;
+    private StandInVideoServer server;
+    private File file;
+    private byte[] video;
+
+    @Before
+    public void setUp() throws Exception {
+        Settings.setApplicationId("1234567890");
+        context = InstrumentationRegistry.getTargetContext();
+        previousTransport = Settings.getHttpTransport();
+
+        video = new byte[FILE_LENGTH];
+        new Random(42).nextBytes(video);
+        file = new File(context.getCacheDir(), "ResumableVideoUploadTest.mp4");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(video);
+        } finally {
+            out.close();
+        }
+        ResumableVideoUpload.discard(context, file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Settings.setHttpTransport(previousTransport);
+        if (server != null) {
+            server.close();
+        }
+        ResumableVideoUpload.discard(context, file);
+        file.delete();
+    }
+
+    @Test
+    public void followsTheWindowsOfTheServer() throws Exception {
+        startServer(WINDOW);
+
+        Response response = upload();
+
+        assertNull(response.getError());
+        assertArrayEquals(video, server.getData());
+        assertEquals(Arrays.asList(0L, 65536L, 131072L, 196608L), server.getTransferOffsets());
+        assertEquals(1, server.getMaxTransfersInFlight());
+        assertEquals(1, server.getStartRequests());
+        assertEquals(1, server.getFinishRequests());
+    }
+
+    @Test
+    public void retriesTransientErrors() throws Exception {
+        startServer(WINDOW);
+        server.answerTransfers(StandInVideoServer.Answer.OK, StandInVideoServer.Answer.TRANSIENT_ERROR,
+                StandInVideoServer.Answer.TRANSIENT_ERROR);
+
+        Response response = upload();
+
+        assertNull(response.getError());
+        assertArrayEquals(video, server.getData());
+        assertEquals(Arrays.asList(0L, 65536L, 65536L, 65536L, 131072L, 196608L), server.getTransferOffsets());
+    }
+
+    @Test
+    public void resumesAtTheLastWindowAfterAFailure() throws Exception {
+        startServer(WINDOW);
+        server.answerTransfers(StandInVideoServer.Answer.OK, StandInVideoServer.Answer.OK,
+                StandInVideoServer.Answer.PERMANENT_ERROR);
+
+        Response failed = upload();
+        assertNotNull(failed.getError());
+        assertEquals(Arrays.asList(0L, 65536L, 131072L), server.getTransferOffsets());
+        assertEquals(0, server.getFinishRequests());
+
+        Response response = upload();
+
+        assertNull(response.getError());
+        assertArrayEquals(video, server.getData());
+        assertEquals(1, server.getStartRequests());
+        assertEquals(Arrays.asList(0L, 65536L, 131072L, 131072L, 196608L), server.getTransferOffsets());
+        assertEquals(1, server.getFinishRequests());
+    }
+
+    @Test
+    public void failsOnOffsetsOutsideTheFile() throws Exception {
+        startServer(WINDOW);
+        server.answerTransfers(StandInVideoServer.Answer.BAD_OFFSETS);
+
+        Response response = upload();
+
+        assertNotNull(response.getError());
+        assertEquals(Arrays.asList(0L), server.getTransferOffsets());
+        assertEquals(0, server.getFinishRequests());
+    }
+
+    private void startServer(int window) throws Exception {
+        server = new StandInVideoServer(window);
+        Settings.setHttpTransport(server.getTransport());
+    }
+
+    private Response upload() throws Exception {
+        UploadResult result = new UploadResult();
+        new ResumableVideoUpload(context, null, file, result).start();
+        return result.await();
+    }
+
+    private static class UploadResult implements Request.Callback {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Response response;
+
+        @Override
+        public void onCompleted(Response response) {
+            this.response = response;
+            done.countDown();
+        }
+
+        Response await() throws InterruptedException {
+            assertTrue("upload timed out", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return response;
+        }
+    }
+}
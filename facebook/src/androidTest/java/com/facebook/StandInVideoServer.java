@@ -0,0 +1,367 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * A local stand-in for the resumable video upload of the Graph API. It hands out windows of a fixed size, keeps the
+ * bytes it received and, like the Graph API, rejects chunks which don't start at the offset it handed out last or
+ * reach past the window. Transfers can be answered with injected failures, in the
+ * order they arrive. {@link #getTransport()} redirects the requests of the SDK to it.
+ */
+class StandInVideoServer {
+    enum Answer {
+        /** Accept the chunk. */
+        OK,
+        /** Drop the chunk and answer with a transient server error. */
+        TRANSIENT_ERROR,
+        /** Drop the chunk and answer with an error which won't go away. */
+        PERMANENT_ERROR,
+        /** Accept the chunk but answer with an end offset after the end of the file. */
+        BAD_OFFSETS,
+    }
+
+    private static final String SESSION_ID = "stand-in-session";
+    private static final String TRANSIENT_ERROR_BODY = "{\"error\":{\"message\":\"Service temporarily unavailable\","
+            + "\"type\":\"FacebookApiException\",\"code\":2,\"is_transient\":true}}";
+    private static final String PERMANENT_ERROR_BODY = "{\"error\":{\"message\":\"Invalid upload session\","
+            + "\"type\":\"OAuthException\",\"code\":100,\"is_transient\":false}}";
+    // keeps a transfer in flight long enough that overlapping transfers are counted
+    private static final long TRANSFER_MILLIS = 100;
+
+    private final ServerSocket serverSocket;
+    private final int window;
+    private final Queue<Answer> answers = new LinkedList<Answer>();
+
+    // guarded by this
+    private byte[] data;
+    private BitSet received;
+    private int startRequests;
+    private int finishRequests;
+    private final List<Long> transferOffsets = new ArrayList<Long>();
+    private int transfersInFlight;
+    private int maxTransfersInFlight;
+
+    StandInVideoServer(int window) throws IOException {
+        this.window = window;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "StandInVideoServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Returns a transport which sends all requests to this server instead of Facebook.
+     */
+    HttpTransport getTransport() {
+        final PlatformHttpTransport transport = new PlatformHttpTransport();
+        return new HttpTransport() {
+            @Override
+            public HttpURLConnection openConnection(URL url) throws IOException {
+                return transport.openConnection(new URL("http", "127.0.0.1", serverSocket.getLocalPort(),
+                        url.getFile()));
+            }
+
+            @Override
+            public void release(HttpURLConnection connection, InputStream stream) {
+                transport.release(connection, stream);
+            }
+
+            @Override
+            public void onTimings(HttpTimings timings) {
+            }
+        };
+    }
+
+    /**
+     * Sets how the next transfers are answered, the ones after them are accepted.
+     */
+    synchronized void answerTransfers(Answer... answers) {
+        this.answers.clear();
+        for (Answer answer : answers) {
+            this.answers.add(answer);
+        }
+    }
+
+    synchronized byte[] getData() {
+        return data;
+    }
+
+    synchronized int getStartRequests() {
+        return startRequests;
+    }
+
+    synchronized int getFinishRequests() {
+        return finishRequests;
+    }
+
+    synchronized List<Long> getTransferOffsets() {
+        return new ArrayList<Long>(transferOffsets);
+    }
+
+    synchronized int getMaxTransfersInFlight() {
+        return maxTransfersInFlight;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            Thread connectionThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "StandInVideoServer connection");
+            connectionThread.setDaemon(true);
+            connectionThread.start();
+        }
+    }
+
+    // answers the requests of a kept-alive connection until the client closes it
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(in)) != null && requestLine.length() > 0) {
+                Map<String, String> headers = new HashMap<String, String>();
+                String header;
+                while ((header = readLine(in)) != null && header.length() > 0) {
+                    int colon = header.indexOf(':');
+                    headers.put(header.substring(0, colon).trim().toLowerCase(Locale.US),
+                            header.substring(colon + 1).trim());
+                }
+                byte[] body = readBody(in, headers);
+
+                String target = requestLine.split(" ")[1];
+                Map<String, String> query = parseQuery(target);
+                String[] response = handle(query, headers.get("content-type"), body);
+
+                byte[] responseBody = response[1].getBytes("UTF-8");
+                out.write(("HTTP/1.1 " + response[0] + "\r\nContent-Type: application/json\r\nContent-Length: "
+                        + responseBody.length + "\r\n\r\n").getBytes("UTF-8"));
+                out.write(responseBody);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+
+    // returns the status line and the body of the response
+    private String[] handle(Map<String, String> query, String contentType, byte[] body) {
+        String phase = query.get("upload_phase");
+        if ("start".equals(phase)) {
+            synchronized (this) {
+                startRequests++;
+                data = new byte[Integer.parseInt(query.get("file_size"))];
+                received = new BitSet(data.length);
+                return ok("{\"upload_session_id\":\"" + SESSION_ID + "\",\"video_id\":\"1234\","
+                        + offsets(0));
+            }
+        } else if ("transfer".equals(phase)) {
+            return transfer(Long.parseLong(query.get("start_offset")), getChunk(contentType, body));
+        } else if ("finish".equals(phase)) {
+            synchronized (this) {
+                finishRequests++;
+                if (received.nextClearBit(0) < data.length) {
+                    return new String[]{"400 Bad Request", PERMANENT_ERROR_BODY};
+                }
+                return ok("{\"success\":true}");
+            }
+        }
+        return new String[]{"400 Bad Request", PERMANENT_ERROR_BODY};
+    }
+
+    private String[] transfer(long offset, byte[] chunk) {
+        Answer answer;
+        synchronized (this) {
+            transferOffsets.add(offset);
+            answer = answers.poll();
+            transfersInFlight++;
+            maxTransfersInFlight = Math.max(maxTransfersInFlight, transfersInFlight);
+        }
+        try {
+            Thread.sleep(TRANSFER_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            transfersInFlight--;
+            if (answer == Answer.TRANSIENT_ERROR) {
+                return new String[]{"500 Internal Server Error", TRANSIENT_ERROR_BODY};
+            } else if (answer == Answer.PERMANENT_ERROR) {
+                return new String[]{"400 Bad Request", PERMANENT_ERROR_BODY};
+            }
+
+            // the window handed out last starts at the first byte not received yet
+            long windowStart = received.nextClearBit(0);
+            long windowEnd = Math.min(data.length, windowStart + window);
+            if (chunk == null || offset != windowStart || offset + chunk.length > windowEnd) {
+                return new String[]{"400 Bad Request", PERMANENT_ERROR_BODY};
+            }
+            System.arraycopy(chunk, 0, data, (int) offset, chunk.length);
+            received.set((int) offset, (int) offset + chunk.length);
+
+            if (answer == Answer.BAD_OFFSETS) {
+                return ok("{\"start_offset\":\"0\",\"end_offset\":\"" + (data.length + window) + "\"}");
+            }
+            return ok("{" + offsets(received.nextClearBit(0)));
+        }
+    }
+
+    private String offsets(int start) {
+        start = Math.min(start, data.length);
+        int end = Math.min(start + window, data.length);
+        return "\"start_offset\":\"" + start + "\",\"end_offset\":\"" + end + "\"}";
+    }
+
+    private static String[] ok(String body) {
+        return new String[]{"200 OK", body};
+    }
+
+    // the video_file_chunk part of a multipart body, or null
+    private static byte[] getChunk(String contentType, byte[] body) {
+        if (contentType == null || !contentType.contains("boundary=")) {
+            return null;
+        }
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        String text = latin1(body);
+        int part = text.indexOf("name=\"video_file_chunk\"");
+        if (part == -1) {
+            return null;
+        }
+        int start = text.indexOf("\r\n\r\n", part) + 4;
+        int end = text.indexOf("\r\n--" + boundary, start);
+        if (start < 4 || end == -1) {
+            return null;
+        }
+        byte[] chunk = new byte[end - start];
+        System.arraycopy(body, start, chunk, 0, chunk.length);
+        return chunk;
+    }
+
+    private static Map<String, String> parseQuery(String target) throws IOException {
+        Map<String, String> query = new HashMap<String, String>();
+        int questionMark = target.indexOf('?');
+        if (questionMark == -1) {
+            return query;
+        }
+        for (String pair : target.substring(questionMark + 1).split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals != -1) {
+                query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private static byte[] readBody(InputStream in, Map<String, String> headers) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            int size;
+            while ((size = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0) {
+                copy(in, body, size);
+                readLine(in);
+            }
+            // the trailers end with an empty line
+            String trailer;
+            do {
+                trailer = readLine(in);
+            } while (trailer != null && trailer.length() > 0);
+        } else if (headers.containsKey("content-length")) {
+            copy(in, body, Integer.parseInt(headers.get("content-length")));
+        }
+        return body.toByteArray();
+    }
+
+    private static void copy(InputStream in, ByteArrayOutputStream out, int count) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (count > 0) {
+            int read = in.read(buffer, 0, Math.min(buffer.length, count));
+            if (read == -1) {
+                throw new IOException("Body ended early");
+            }
+            out.write(buffer, 0, read);
+            count -= read;
+        }
+    }
+
+    // a line without its CRLF, or null at the end of the stream
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, "ISO-8859-1");
+            }
+            line.write(c);
+        }
+        return line.size() > 0 ? latin1(line.toByteArray()) : null;
+    }
+
+    private static String latin1(byte[] bytes) {
+        try {
+            return new String(bytes, "ISO-8859-1");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Compresses Bitmap attachments once and keeps the result for as long as the Bitmap is alive, so the upload, any
+ * retry of it and native app shares of the same Bitmap all reuse the same bytes. An encoding can be started early
+ * on the executor of the SDK with {@link #prefetch}; {@link #encode} waits for it, or encodes on the calling thread
+ * if nobody started it yet. Cached encodings are dropped once they exceed {@link #MAX_CACHED_BYTES} together; an
+ * encoding in progress counts with the size of the uncompressed Bitmap, which it can't exceed in practice.
+ * <p/>
+ * The entries only reference their Bitmap weakly, the tasks included, so a Bitmap nobody else uses can still be
+ * collected together with its entry, even while a prefetch of it waits for the executor.
+ */
+final class BitmapEncoder {
+    private static final long MAX_CACHED_BYTES = 8 * 1024 * 1024;
+
+    private static final Map<Bitmap, Entry> cache = new WeakHashMap<Bitmap, Entry>();
+
+    private BitmapEncoder() {
+    }
+
+    static void prefetch(Bitmap bitmap) {
+        prefetch(bitmap, Settings.getBitmapAttachmentFormat(), Settings.getBitmapAttachmentQuality());
+    }
+
+    static void prefetch(Bitmap bitmap, Bitmap.CompressFormat format, int quality) {
+        FutureTask<byte[]> task = getTask(bitmap, format, quality);
+        try {
+            Settings.getExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            // the executor is busy, encode() will compress on the calling thread instead
+        }
+    }
+
+    /**
+     * @return the compressed Bitmap; the array is shared and must not be modified
+     */
+    static byte[] encode(Bitmap bitmap, Bitmap.CompressFormat format, int quality) throws IOException {
+        FutureTask<byte[]> task = getTask(bitmap, format, quality);
+        // does nothing if the task already runs on another thread or is done
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            synchronized (cache) {
+                Entry entry = cache.get(bitmap);
+                if (entry != null && entry.task == task) {
+                    cache.remove(bitmap);
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new FacebookException(cause);
+        }
+    }
+
+    static String getContentType(Bitmap.CompressFormat format) {
+        if (format == Bitmap.CompressFormat.PNG) {
+            return "image/png";
+        } else if (format == Bitmap.CompressFormat.JPEG) {
+            return "image/jpeg";
+        }
+        return "image/webp";
+    }
+
+    private static FutureTask<byte[]> getTask(Bitmap bitmap, final Bitmap.CompressFormat format,
+            final int quality) {
+        int generationId = getGenerationId(bitmap);
+        synchronized (cache) {
+            Entry entry = cache.get(bitmap);
+            if (entry != null && entry.matches(format, quality, generationId)) {
+                return entry.task;
+            }
+
+            long maxLength = (long) bitmap.getRowBytes() * bitmap.getHeight();
+            trimCache(maxLength);
+            final WeakReference<Bitmap> bitmapReference = new WeakReference<Bitmap>(bitmap);
+            FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    Bitmap bitmap = bitmapReference.get();
+                    if (bitmap == null) {
+                        // only a prefetch can get here, whoever encodes a Bitmap holds on to it
+                        throw new IOException("Bitmap was garbage collected before it was compressed");
+                    }
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    // Note: quality parameter is ignored for PNG
+                    if (!bitmap.compress(format, quality, outputStream)) {
+                        throw new IOException("Could not compress bitmap");
+                    }
+                    return outputStream.toByteArray();
+                }
+            });
+            cache.put(bitmap, new Entry(format, quality, generationId, maxLength, task));
+            return task;
+        }
+    }
+
+    // makes room for an encoding of up to newLength bytes, dropping encodings in progress as well; their tasks
+    // still finish for whoever waits on them
+    private static void trimCache(long newLength) {
+        long cachedBytes = newLength;
+        for (Entry entry : cache.values()) {
+            cachedBytes += entry.getLength();
+        }
+        Iterator<Entry> iterator = cache.values().iterator();
+        while (cachedBytes > MAX_CACHED_BYTES && iterator.hasNext()) {
+            cachedBytes -= iterator.next().getLength();
+            iterator.remove();
+        }
+    }
+
+    // lets a changed Bitmap be encoded again, Bitmaps can't tell before API 12
+    private static int getGenerationId(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+            return bitmap.getGenerationId();
+        }
+        return 0;
+    }
+
+    private static class Entry {
+        private final Bitmap.CompressFormat format;
+        private final int quality;
+        private final int generationId;
+        private final long maxLength;
+        private final FutureTask<byte[]> task;
+
+        Entry(Bitmap.CompressFormat format, int quality, int generationId, long maxLength, FutureTask<byte[]> task) {
+            this.format = format;
+            this.quality = quality;
+            this.generationId = generationId;
+            this.maxLength = maxLength;
+            this.task = task;
+        }
+
+        boolean matches(Bitmap.CompressFormat format, int quality, int generationId) {
+            return this.format == format && this.generationId == generationId
+                    && (format == Bitmap.CompressFormat.PNG || this.quality == quality);
+        }
+
+        // the real length once the encoding is done, the most it can take until then
+        long getLength() {
+            if (!task.isDone()) {
+                return maxLength;
+            }
+            try {
+                return task.get().length;
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -344,13 +344,15 @@ public final class FacebookRequestError {
     }
 
     /**
-     * Returns the full JSON response for the batch request. If the request was not a batch
-     * request, then the result from this method is the same as {@link #getRequestResult()}.
-     * In case of a batch request, the result will be a JSONArray where the elements
-     * correspond to the requests in the batch. Callers should check the return type against
+     * Returns the JSON response of the request as it was returned by the server. If the request
+     * was not a batch request, this is the raw response, before it was wrapped into the result
+     * of {@link #getRequestResult()}. In case of a batch request, the result is the element of
+     * the batch response which corresponds to this request, the same JSONObject as
+     * {@link #getRequestResult()}. The response of the whole batch is not kept, so that a batch
+     * can be parsed one element at a time. Callers should check the return type against
      * either JSONObject or JSONArray and cast accordingly.
      *
-     * @return the full JSON response for the batch
+     * @return the JSON response of the request
      */
     public Object getBatchRequestResult() {
         return batchRequestResult;
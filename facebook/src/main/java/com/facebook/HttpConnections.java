@@ -0,0 +1,85 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens, reads and releases connections made outside of {@link Request}, e.g. image downloads, through
+ * {@link Settings#getHttpTransport() the transport} with their {@link HttpTimings} recorded. It is solely for the
+ * use of other packages within the Facebook SDK for Android; use of it is unsupported, and it may be modified or
+ * removed without warning at any time.
+ */
+public final class HttpConnections {
+    private HttpConnections() {
+    }
+
+    /**
+     * Opens a connection and starts its timings.
+     *
+     * @param url the url to connect to
+     * @return the connection, not connected yet
+     * @throws IOException if the connection can't be opened
+     */
+    public static HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = Settings.getHttpTransport().openConnection(url);
+        HttpTimings.start(connection);
+        return connection;
+    }
+
+    /**
+     * Connects and waits for the response headers.
+     *
+     * @param connection a connection from {@link #open(URL)}
+     * @return the response code
+     * @throws IOException if there is no response
+     */
+    public static int getResponseCode(HttpURLConnection connection) throws IOException {
+        HttpTimings timings = HttpTimings.get(connection);
+        connection.connect();
+        timings.onConnected();
+        int responseCode = connection.getResponseCode();
+        timings.onFirstByte();
+        return responseCode;
+    }
+
+    /**
+     * @param connection a connection from {@link #open(URL)}
+     * @param stream     its response body or error stream, may be null
+     * @return the stream, counting the bytes read for the timings
+     */
+    public static InputStream track(HttpURLConnection connection, InputStream stream) {
+        return HttpTimings.get(connection).track(stream);
+    }
+
+    /**
+     * Hands the connection back to the transport and finishes its timings. Call it on every path out of a download.
+     *
+     * @param connection a connection from {@link #open(URL)}
+     * @param stream     the stream read from, or null if none was opened
+     */
+    public static void release(HttpURLConnection connection, InputStream stream) {
+        try {
+            Settings.getHttpTransport().release(connection, stream);
+        } finally {
+            HttpTimings.finish(connection);
+        }
+    }
+}
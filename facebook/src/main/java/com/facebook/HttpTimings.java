@@ -0,0 +1,230 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The timings of a single HTTP request, reported to {@link HttpTransport#onTimings(HttpTimings)}. All times are in
+ * milliseconds; connect and first byte count from the start of the request, the transfer from the first byte to the
+ * end of the response body. A connection taken from a pool connects in next to no time.
+ * <p/>
+ * The timings are recorded by the SDK; a connection is tracked from {@link #start(HttpURLConnection)} until
+ * {@link #finish()}, which happens on every path out of a request, whether it got a response or not.
+ */
+public final class HttpTimings {
+    // the values only hold their keys weakly, so a connection which is never finished doesn't stay in the map
+    private static final Map<HttpURLConnection, HttpTimings> activeTimings =
+            new WeakHashMap<HttpURLConnection, HttpTimings>();
+
+    private final WeakReference<HttpURLConnection> connection;
+    private final URL url;
+    private final long startNanos = System.nanoTime();
+    private volatile long connectedNanos;
+    private volatile long firstByteNanos;
+    private volatile long endNanos;
+    private volatile long bytes;
+    private boolean finished;
+
+    private HttpTimings(HttpURLConnection connection) {
+        this.connection = new WeakReference<HttpURLConnection>(connection);
+        this.url = connection.getURL();
+    }
+
+    /**
+     * Starts tracking a connection, before it is connected.
+     *
+     * @param connection the connection
+     * @return the timings of the connection
+     */
+    static HttpTimings start(HttpURLConnection connection) {
+        HttpTimings timings = new HttpTimings(connection);
+        synchronized (activeTimings) {
+            activeTimings.put(connection, timings);
+        }
+        return timings;
+    }
+
+    /**
+     * @param connection the connection
+     * @return the timings of a tracked connection, or a new one starting now
+     */
+    static HttpTimings get(HttpURLConnection connection) {
+        synchronized (activeTimings) {
+            HttpTimings timings = activeTimings.get(connection);
+            if (timings != null) {
+                return timings;
+            }
+        }
+        return start(connection);
+    }
+
+    /**
+     * Finishes the timings of a tracked connection, if there are any.
+     *
+     * @param connection the connection
+     */
+    static void finish(HttpURLConnection connection) {
+        HttpTimings timings;
+        synchronized (activeTimings) {
+            timings = activeTimings.get(connection);
+        }
+        if (timings != null) {
+            timings.finish();
+        }
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the time until the connection was established, or -1 if it wasn't recorded
+     */
+    public long getConnectMillis() {
+        return toMillis(connectedNanos);
+    }
+
+    /**
+     * @return the time until the response headers arrived, or -1 if there was no response
+     */
+    public long getFirstByteMillis() {
+        return toMillis(firstByteNanos);
+    }
+
+    /**
+     * @return the time it took to read the response body, or -1 if there was no response
+     */
+    public long getTransferMillis() {
+        if (firstByteNanos == 0 || endNanos == 0) {
+            return -1;
+        }
+        return (endNanos - firstByteNanos) / 1000000;
+    }
+
+    /**
+     * @return the bytes of the response body read by the caller
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Records that the connection is established. Only the first call counts.
+     */
+    void onConnected() {
+        if (connectedNanos == 0) {
+            connectedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records that the response headers arrived. Only the first call counts.
+     */
+    void onFirstByte() {
+        onConnected();
+        if (firstByteNanos == 0) {
+            firstByteNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * @param stream the response body, may be null
+     * @return the stream, counting the bytes read and recording the end of the body
+     */
+    InputStream track(InputStream stream) {
+        if (stream == null) {
+            return null;
+        }
+        return new FilterInputStream(stream) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b == -1) {
+                    onEnd();
+                } else {
+                    bytes++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                int read = super.read(buffer, offset, count);
+                if (read == -1) {
+                    onEnd();
+                } else {
+                    bytes += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                onEnd();
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * Stops tracking the connection and reports the timings to the transport. Only the first call counts.
+     */
+    void finish() {
+        synchronized (activeTimings) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            HttpURLConnection trackedConnection = connection.get();
+            if (trackedConnection != null && activeTimings.get(trackedConnection) == this) {
+                activeTimings.remove(trackedConnection);
+            }
+        }
+        onEnd();
+        Settings.getHttpTransport().onTimings(this);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append("{HttpTimings: ")
+                .append(" url: ").append(url)
+                .append(", connect: ").append(getConnectMillis())
+                .append(", firstByte: ").append(getFirstByteMillis())
+                .append(", transfer: ").append(getTransferMillis())
+                .append(", bytes: ").append(bytes)
+                .append("}")
+                .toString();
+    }
+
+    private void onEnd() {
+        if (endNanos == 0 && firstByteNanos != 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    private long toMillis(long nanos) {
+        return nanos == 0 ? -1 : (nanos - startNanos) / 1000000;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens and releases the HTTP connections of Graph API requests and image downloads. The default is
+ * {@link PlatformHttpTransport}; an embedded client which hands out HttpURLConnections, e.g. OkHttp's
+ * {@code OkUrlFactory}, can be plugged in with {@link Settings#setHttpTransport(HttpTransport)}.
+ */
+public interface HttpTransport {
+    /**
+     * Opens a connection to the url. It isn't connected yet, so it can still be configured.
+     *
+     * @param url the url to connect to
+     * @return the connection
+     * @throws IOException if the connection can't be opened
+     */
+    HttpURLConnection openConnection(URL url) throws IOException;
+
+    /**
+     * Called once the caller is done with a connection, whether the response was read completely or not.
+     * The transport decides whether the connection can go back to its pool.
+     *
+     * @param connection the connection
+     * @param stream     the response body or error stream the caller read from, or null if none was opened
+     */
+    void release(HttpURLConnection connection, InputStream stream);
+
+    /**
+     * Called with the timings of every finished request, on the thread which made it.
+     *
+     * @param timings the timings
+     */
+    void onTimings(HttpTimings timings);
+}
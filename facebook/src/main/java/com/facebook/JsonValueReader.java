@@ -0,0 +1,121 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Reads values from an android.util.JsonReader into the org.json types used throughout the SDK. Values come out
+ * exactly as JSONTokener.nextValue() would have produced them, so the rest of the response handling does not need
+ * to know whether a response was parsed from a String or streamed.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+final class JsonValueReader {
+    private JsonValueReader() {
+    }
+
+    static JsonReader createReader(Reader reader) {
+        JsonReader jsonReader = new JsonReader(reader);
+        // JSONTokener accepts literals such as "true" as a whole response, and so must we.
+        jsonReader.setLenient(true);
+        return jsonReader;
+    }
+
+    static Object parse(String json) throws IOException, JSONException {
+        JsonReader reader = createReader(new StringReader(json));
+        try {
+            return readValue(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    static Object readValue(JsonReader reader) throws IOException, JSONException {
+        try {
+            JsonToken token = reader.peek();
+            switch (token) {
+                case BEGIN_OBJECT:
+                    JSONObject jsonObject = new JSONObject();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        jsonObject.put(name, readValue(reader));
+                    }
+                    reader.endObject();
+                    return jsonObject;
+
+                case BEGIN_ARRAY:
+                    JSONArray jsonArray = new JSONArray();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        jsonArray.put(readValue(reader));
+                    }
+                    reader.endArray();
+                    return jsonArray;
+
+                case STRING:
+                    return reader.nextString();
+
+                case NUMBER:
+                    return parseNumber(reader.nextString());
+
+                case BOOLEAN:
+                    return reader.nextBoolean();
+
+                case NULL:
+                    reader.nextNull();
+                    return JSONObject.NULL;
+
+                default:
+                    throw new JSONException("Unexpected token " + token);
+            }
+        } catch (IllegalStateException e) {
+            // JsonReader reports structural errors this way, JSONTokener with a JSONException.
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    // Same number types as JSONTokener: Integer if it fits, then Long, Double for everything else.
+    private static Object parseNumber(String number) {
+        if (number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(number);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException e) {
+                // too big for a long, fall through
+            }
+        }
+        try {
+            return Double.valueOf(number);
+        } catch (NumberFormatException e) {
+            return number;
+        }
+    }
+}
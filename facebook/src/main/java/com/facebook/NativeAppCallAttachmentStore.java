@@ -16,14 +16,18 @@
 
 package com.facebook;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.Build;
+import android.system.Os;
 import android.util.Log;
 import com.facebook.internal.Utility;
 import com.facebook.internal.Validate;
 
 import java.io.*;
 import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -62,12 +66,18 @@ public final class NativeAppCallAttachmentStore implements NativeAppCallContentP
         Validate.containsNoNulls(imageAttachments.values(), "imageAttachments");
         Validate.containsNoNullOrEmpty(imageAttachments.keySet(), "imageAttachments");
 
+        // compress the attachments in parallel, they are written one after the other
+        for (Bitmap attachment : imageAttachments.values()) {
+            BitmapEncoder.prefetch(attachment, Bitmap.CompressFormat.JPEG, 100);
+        }
+
         addAttachments(context, callId, imageAttachments, new ProcessAttachment<Bitmap>() {
             @Override
             public void processAttachment(Bitmap attachment, File outputFile) throws IOException {
+                byte[] bytes = BitmapEncoder.encode(attachment, Bitmap.CompressFormat.JPEG, 100);
                 FileOutputStream outputStream = new FileOutputStream(outputFile);
                 try {
-                    attachment.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
+                    outputStream.write(bytes);
                 } finally {
                     Utility.closeQuietly(outputStream);
                 }
@@ -78,6 +88,11 @@ public final class NativeAppCallAttachmentStore implements NativeAppCallContentP
     /**
      * Adds a number of bitmap/video attachment files associated with a native app call. The attachments will be
      * served via {@link NativeAppCallContentProvider#openFile(android.net.Uri, String) openFile}.
+     * <p/>
+     * From Android 5.0 on, a file on the same file system as the attachment store is hard linked instead of copied,
+     * so the store serves the very same data. Such a file must not be modified in place until the call finished
+     * and {@link #cleanupAttachmentsForCall} ran; replacing it with a new file, e.g. by renaming one over it, or
+     * deleting it is fine.
      *
      * @param context the Context the call is being made from
      * @param callId the unique ID of the call
@@ -94,15 +109,31 @@ public final class NativeAppCallAttachmentStore implements NativeAppCallContentP
         addAttachments(context, callId, mediaAttachmentFiles, new ProcessAttachment<File>() {
             @Override
             public void processAttachment(File attachment, File outputFile) throws IOException {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && link(attachment, outputFile)) {
+                    return;
+                }
+
                 FileOutputStream outputStream = new FileOutputStream(outputFile);
                 FileInputStream inputStream = null;
                 try {
                     inputStream = new FileInputStream(attachment);
 
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    while ((len = inputStream.read(buffer)) > 0) {
-                        outputStream.write(buffer, 0, len);
+                    // lets the kernel copy the file, videos can be hundreds of MB
+                    FileChannel inputChannel = inputStream.getChannel();
+                    FileChannel outputChannel = outputStream.getChannel();
+                    long size = inputChannel.size();
+                    long position = 0;
+                    while (position < size) {
+                        long transferred = inputChannel.transferTo(position, size - position, outputChannel);
+                        if (transferred <= 0) {
+                            break;
+                        }
+                        position += transferred;
+                    }
+                    if (position < size) {
+                        // the file shrank during the copy or the copy stalled, a truncated attachment must not
+                        // be served
+                        throw new IOException("Copied only " + position + " of " + size + " bytes of " + attachment);
                     }
                 } finally {
                     Utility.closeQuietly(outputStream);
@@ -151,6 +182,18 @@ public final class NativeAppCallAttachmentStore implements NativeAppCallContentP
 
     }
 
+    // a hard link needs no copy at all, but only works if both files are on the same file system; it shares the
+    // data with the caller's file, see addAttachmentFilesForCall
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean link(File attachment, File outputFile) {
+        try {
+            Os.link(attachment.getAbsolutePath(), outputFile.getAbsolutePath());
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     interface ProcessAttachment<T> {
         void processAttachment(T attachment, File outputFile) throws IOException;
     }
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.util.Log;
+import com.facebook.internal.Logger;
+import com.facebook.internal.Utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * The default {@link HttpTransport}, built on the platform's HttpURLConnection.
+ * <p/>
+ * The platform keeps a pool of idle keep-alive connections per host and evicts them after a while; TLS sessions are
+ * reused through the shared default SSLSocketFactory. A connection only goes back to the pool if its response body
+ * was read to the end and closed, disconnecting it closes the socket on older versions. So released connections are
+ * drained, and only disconnected if that fails. The size of the pool and the idle time are tuned through the
+ * {@code http.maxConnections} and {@code http.keepAliveDuration} system properties unless the app set them itself;
+ * the platform reads them once, so the transport has to be created before the first connection of the process.
+ */
+public class PlatformHttpTransport implements HttpTransport {
+    /**
+     * The default number of idle connections kept per host. It matches the concurrent downloads of the image
+     * downloader, so a list of images from one CDN host can reuse all of its connections.
+     */
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 8;
+
+    /**
+     * The default time an idle connection is kept, 5 minutes.
+     */
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 5 * 60 * 1000;
+
+    private static final String TAG = PlatformHttpTransport.class.getCanonicalName();
+    private static final String MAX_CONNECTIONS_PROPERTY = "http.maxConnections";
+    private static final String KEEP_ALIVE_DURATION_PROPERTY = "http.keepAliveDuration";
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    public PlatformHttpTransport() {
+        this(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+
+    /**
+     * @param maxIdleConnections the number of idle connections kept per host
+     * @param keepAliveMillis    the time an idle connection is kept before it is closed
+     */
+    public PlatformHttpTransport(int maxIdleConnections, long keepAliveMillis) {
+        setPropertyIfUnset(MAX_CONNECTIONS_PROPERTY, Integer.toString(maxIdleConnections));
+        setPropertyIfUnset(KEEP_ALIVE_DURATION_PROPERTY, Long.toString(keepAliveMillis));
+    }
+
+    @Override
+    public HttpURLConnection openConnection(URL url) throws IOException {
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    @Override
+    public void release(HttpURLConnection connection, InputStream stream) {
+        if (stream != null && drain(stream)) {
+            Utility.closeQuietly(stream);
+        } else {
+            Utility.closeQuietly(stream);
+            Utility.disconnectQuietly(connection);
+        }
+    }
+
+    @Override
+    public void onTimings(HttpTimings timings) {
+        Logger.log(LoggingBehavior.REQUESTS, Log.DEBUG, TAG, timings.toString());
+    }
+
+    // a short rest of the body is cheaper to read than a new connection, a long one isn't
+    private static boolean drain(InputStream stream) {
+        try {
+            byte[] buffer = new byte[4096];
+            int drained = 0;
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                drained += read;
+                if (drained > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void setPropertyIfUnset(String key, String value) {
+        try {
+            if (System.getProperty(key) == null) {
+                System.setProperty(key, value);
+            }
+        } catch (SecurityException e) {
+            // keep the platform's defaults
+        }
+    }
+}
@@ -35,6 +35,8 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
@@ -322,6 +324,8 @@ public class Request {
     public static Request newUploadPhotoRequest(Session session, Bitmap image, Callback callback) {
         Bundle parameters = new Bundle(1);
         parameters.putParcelable(PICTURE_PARAM, image);
+        // compress while the caller is still busy, the serializer picks up the result
+        BitmapEncoder.prefetch(image);
 
         return new Request(session, MY_PHOTOS, parameters, HttpMethod.POST, callback);
     }
@@ -346,7 +350,8 @@ public class Request {
 
     /**
      * Creates a new Request configured to upload a photo to the user's default photo album. The photo
-     * will be read from the specified file descriptor.
+     * will be read from the specified file descriptor. The file is sent in a single request, use
+     * {@link ResumableVideoUpload} for large videos.
      *
      * @param session  the Session to use, or null; if non-null, the session must be in an opened state
      * @param file     the file to upload
@@ -641,6 +646,7 @@ public class Request {
             Bitmap image, Callback callback) {
         Bundle parameters = new Bundle(1);
         parameters.putParcelable(STAGING_PARAM, image);
+        BitmapEncoder.prefetch(image);
 
         return new Request(session, MY_STAGING_RESOURCES, parameters, HttpMethod.POST, callback);
     }
@@ -1354,15 +1360,23 @@ public class Request {
             throw new FacebookException("could not construct URL for request", e);
         }
 
-        HttpURLConnection connection;
+        HttpURLConnection connection = null;
+        boolean serialized = false;
         try {
             connection = createConnection(url);
 
             serializeToUrlConnection(requests, connection);
+            serialized = true;
         } catch (IOException e) {
             throw new FacebookException("could not construct request body", e);
         } catch (JSONException e) {
             throw new FacebookException("could not construct request body", e);
+        } finally {
+            if (!serialized && connection != null) {
+                // the connection never reaches fromHttpConnection, release it and end its timings here
+                Settings.getHttpTransport().release(connection, null);
+                HttpTimings.finish(connection);
+            }
         }
 
         return connection;
@@ -1560,10 +1574,9 @@ public class Request {
      *            If there was an error in the protocol used to communicate with the service
      */
     public static List<Response> executeConnectionAndWait(HttpURLConnection connection, RequestBatch requests) {
+        // the connection is released by fromHttpConnection, so the transport can keep it alive
         List<Response> responses = Response.fromHttpConnection(connection, requests);
 
-        Utility.disconnectQuietly(connection);
-
         int numRequests = requests.size();
         if (numRequests != responses.size()) {
             throw new FacebookException(String.format("Received %d responses while expecting %d", responses.size(),
@@ -1687,13 +1700,13 @@ public class Request {
     }
 
     private static HttpURLConnection createConnection(URL url) throws IOException {
-        HttpURLConnection connection;
-        connection = (HttpURLConnection) url.openConnection();
+        HttpURLConnection connection = Settings.getHttpTransport().openConnection(url);
+        HttpTimings.start(connection);
 
         connection.setRequestProperty(USER_AGENT_HEADER, getUserAgent());
         connection.setRequestProperty(ACCEPT_LANGUAGE_HEADER, Locale.getDefault().toString());
 
-        connection.setChunkedStreamingMode(0);
+        // the streaming mode is set once the length of the body is known, see serializeToUrlConnection
         return connection;
     }
 
@@ -1924,27 +1937,38 @@ public class Request {
 
         connection.setDoOutput(true);
 
+        // Lay out the body once. Its exact length and the share of every request are known before anything is
+        // written, so the body can be sent with a fixed length and progress needs no counting pass.
+        Serializer serializer = new Serializer(logger, shouldUseGzip);
         OutputStream outputStream = null;
         try {
+            processRequest(requests, logger, numRequests, url, serializer);
+
+            long length = serializer.getLength();
+            if (!shouldUseGzip && length >= 0 && length <= Integer.MAX_VALUE) {
+                connection.setFixedLengthStreamingMode((int) length);
+            } else {
+                connection.setChunkedStreamingMode(0);
+            }
+
+            connection.connect();
+            HttpTimings.get(connection).onConnected();
+
             outputStream = new BufferedOutputStream(connection.getOutputStream());
             if (shouldUseGzip) {
                 outputStream = new GZIPOutputStream(outputStream);
             }
 
             if (hasOnProgressCallbacks(requests)) {
-                ProgressNoopOutputStream countingStream = null;
-                countingStream = new ProgressNoopOutputStream(requests.getCallbackHandler());
-                processRequest(requests, null, numRequests, url, countingStream, shouldUseGzip);
-
-                int max = countingStream.getMaxProgress();
-                Map<Request, RequestProgress> progressMap = countingStream.getProgressMap();
-
-                outputStream = new ProgressOutputStream(outputStream, requests, progressMap, max);
+                Map<Request, RequestProgress> progressMap = serializer.getProgressMap(requests.getCallbackHandler());
+                outputStream = new ProgressOutputStream(outputStream, requests, progressMap, serializer.getMaxProgress());
             }
 
-            processRequest(requests, logger, numRequests, url, outputStream, shouldUseGzip);
+            serializer.writeTo(outputStream);
         }
         finally {
+            // the attachments which weren't sent still hold their files open
+            serializer.close();
             if (outputStream != null) {
                 outputStream.close();
             }
@@ -1953,11 +1977,9 @@ public class Request {
         logger.log();
     }
 
-    private static void processRequest(RequestBatch requests, Logger logger, int numRequests, URL url, OutputStream outputStream, boolean shouldUseGzip)
+    private static void processRequest(RequestBatch requests, Logger logger, int numRequests, URL url, Serializer serializer)
             throws IOException, JSONException
     {
-        Serializer serializer = new Serializer(outputStream, logger, shouldUseGzip);
-
         if (numRequests == 1) {
             Request request = requests.get(0);
 
@@ -2193,22 +2215,118 @@ public class Request {
         void writeString(String key, String value) throws IOException;
     }
 
+    /**
+     * Builds the request body in a single pass without sending it. Parameters and the batch JSON are encoded into
+     * byte arrays right away, bitmaps are compressed by {@link BitmapEncoder} so retries reuse the result, byte array
+     * attachments are kept as they are and files are only streamed by {@link #writeTo(OutputStream)}. So the length
+     * of the body and the share of every request are known up front. The constant pieces of the multipart format are
+     * encoded only once.
+     */
     private static class Serializer implements KeyValueSerializer {
-        private final OutputStream outputStream;
+        private static final byte[] BOUNDARY_LINE = getBytes("--" + MIME_BOUNDARY + "\r\n");
+        private static final byte[] CONTENT_DISPOSITION = getBytes("Content-Disposition: form-data; name=\"");
+        private static final byte[] FILENAME = getBytes("\"; filename=\"");
+        private static final byte[] CONTENT_DISPOSITION_END = getBytes("\"\r\n");
+        private static final byte[] CONTENT_TYPE = getBytes(CONTENT_TYPE_HEADER + ": ");
+        private static final byte[] CRLF = getBytes("\r\n");
+        private static final byte[] AMPERSAND = getBytes("&");
+        private static final byte[] EQUALS = getBytes("=");
+        private static final int COPY_BUFFER_SIZE = 65536;
+
         private final Logger logger;
+        private final List<Part> parts = new ArrayList<Part>();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
         private boolean firstWrite = true;
         private boolean useUrlEncode = false;
+        private Request currentRequest;
+        private long length;
+        private boolean lengthKnown = true;
 
-        public Serializer(OutputStream outputStream, Logger logger, boolean useUrlEncode) {
-            this.outputStream = outputStream;
+        public Serializer(Logger logger, boolean useUrlEncode) {
             this.logger = logger;
             this.useUrlEncode = useUrlEncode;
         }
 
-        public void writeObject(String key, Object value, Request request) throws IOException {
-            if (outputStream instanceof RequestOutputStream) {
-                ((RequestOutputStream) outputStream).setCurrentRequest(request);
+        /**
+         * @return the exact length of the body in bytes, or -1 if a file attachment doesn't know its size
+         */
+        public long getLength() {
+            flushPending();
+            return lengthKnown ? length : -1;
+        }
+
+        public int getMaxProgress() {
+            flushPending();
+            return (int) length;
+        }
+
+        public Map<Request, RequestProgress> getProgressMap(Handler callbackHandler) {
+            flushPending();
+            Map<Request, RequestProgress> progressMap = new HashMap<Request, RequestProgress>();
+            for (Part part : parts) {
+                if (part.request == null || part.length <= 0) {
+                    continue;
+                }
+                RequestProgress progress = progressMap.get(part.request);
+                if (progress == null) {
+                    progress = new RequestProgress(callbackHandler, part.request);
+                    progressMap.put(part.request, progress);
+                }
+                progress.addToMax(part.length);
             }
+            return progressMap;
+        }
+
+        public void writeTo(OutputStream outputStream) throws IOException {
+            flushPending();
+            ByteBuffer buffer = null;
+            for (Part part : parts) {
+                if (outputStream instanceof RequestOutputStream) {
+                    ((RequestOutputStream) outputStream).setCurrentRequest(part.request);
+                }
+
+                if (part.bytes != null) {
+                    outputStream.write(part.bytes);
+                    continue;
+                }
+
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+                }
+                part.streamed = true;
+                FileInputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(part.descriptor);
+                try {
+                    FileChannel channel = inputStream.getChannel();
+                    // the chunks are larger than the buffer of the connection's stream, so they are handed to
+                    // the socket without being copied again
+                    while (channel.read(buffer) != -1) {
+                        outputStream.write(buffer.array(), 0, buffer.position());
+                        buffer.clear();
+                    }
+                } finally {
+                    inputStream.close();
+                }
+            }
+        }
+
+        /**
+         * Closes the file descriptors of the attachments which weren't streamed yet, writeTo closes the others.
+         */
+        public void close() {
+            for (Part part : parts) {
+                if (part.descriptor != null && !part.streamed) {
+                    part.streamed = true;
+                    try {
+                        part.descriptor.close();
+                    } catch (IOException e) {
+                        // nothing left to do
+                    }
+                }
+            }
+        }
+
+        public void writeObject(String key, Object value, Request request) throws IOException {
+            setCurrentRequest(request);
 
             if (isSupportedParameterType(value)) {
                 writeString(key, parameterToString(value));
@@ -2227,26 +2345,22 @@ public class Request {
 
         public void writeRequestsAsJson(String key, JSONArray requestJsonArray, Collection<Request> requests)
                 throws IOException, JSONException {
-            if (! (outputStream instanceof RequestOutputStream)) {
-                writeString(key, requestJsonArray.toString());
-                return;
-            }
-
-            RequestOutputStream requestOutputStream = (RequestOutputStream) outputStream;
+            // every entry counts towards the progress of its own request
             writeContentDisposition(key, null, null);
-            write("[");
+            writeText("[");
             int i = 0;
             for (Request request : requests) {
                 JSONObject requestJson = requestJsonArray.getJSONObject(i);
-                requestOutputStream.setCurrentRequest(request);
+                setCurrentRequest(request);
                 if (i > 0) {
-                    write(",%s", requestJson.toString());
-                } else {
-                    write("%s", requestJson.toString());
+                    writeText(",");
                 }
+                writeText(requestJson.toString());
                 i++;
             }
-            write("]");
+            writeText("]");
+            writeLineEnd();
+            writeRecordBoundary();
             if (logger != null) {
                 logger.appendKeyValue("    " + key, requestJsonArray.toString());
             }
@@ -2254,7 +2368,8 @@ public class Request {
 
         public void writeString(String key, String value) throws IOException {
             writeContentDisposition(key, null, null);
-            writeLine("%s", value);
+            writeText(value);
+            writeLineEnd();
             writeRecordBoundary();
             if (logger != null) {
                 logger.appendKeyValue("    " + key, value);
@@ -2262,10 +2377,12 @@ public class Request {
         }
 
         public void writeBitmap(String key, Bitmap bitmap) throws IOException {
-            writeContentDisposition(key, key, "image/png");
-            // Note: quality parameter is ignored for PNG
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
-            writeLine("");
+            Bitmap.CompressFormat format = Settings.getBitmapAttachmentFormat();
+            byte[] bytes = BitmapEncoder.encode(bitmap, format, Settings.getBitmapAttachmentQuality());
+            writeContentDisposition(key, key, BitmapEncoder.getContentType(format));
+            flushPending();
+            addPart(new Part(currentRequest, bytes, null, bytes.length));
+            writeLineEnd();
             writeRecordBoundary();
             if (logger != null) {
                 logger.appendKeyValue("    " + key, "<Image>");
@@ -2274,8 +2391,9 @@ public class Request {
 
         public void writeBytes(String key, byte[] bytes) throws IOException {
             writeContentDisposition(key, key, "content/unknown");
-            this.outputStream.write(bytes);
-            writeLine("");
+            flushPending();
+            addPart(new Part(currentRequest, bytes, null, bytes.length));
+            writeLineEnd();
             writeRecordBoundary();
             if (logger != null) {
                 logger.appendKeyValue("    " + key, String.format("<Data: %d>", bytes.length));
@@ -2292,87 +2410,118 @@ public class Request {
             }
             writeContentDisposition(key, key, mimeType);
 
-            int totalBytes = 0;
-
-            if (outputStream instanceof ProgressNoopOutputStream) {
-                // If we are only counting bytes then skip reading the file
-                ((ProgressNoopOutputStream) outputStream).addProgress(descriptor.getStatSize());
-            }
-            else {
-                ParcelFileDescriptor.AutoCloseInputStream inputStream = null;
-                BufferedInputStream bufferedInputStream = null;
-                try {
-                    inputStream = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
-                    bufferedInputStream = new BufferedInputStream(inputStream);
-
-                    byte[] buffer = new byte[8192];
-                    int bytesRead;
-                    while ((bytesRead = bufferedInputStream.read(buffer)) != -1) {
-                        this.outputStream.write(buffer, 0, bytesRead);
-                        totalBytes += bytesRead;
-                    }
-                } finally {
-                    if (bufferedInputStream != null) {
-                        bufferedInputStream.close();
-                    }
-                    if (inputStream != null) {
-                        inputStream.close();
-                    }
-                }
-            }
-            writeLine("");
+            long size = descriptor.getStatSize();
+            flushPending();
+            addPart(new Part(currentRequest, null, descriptor, size));
+            writeLineEnd();
             writeRecordBoundary();
             if (logger != null) {
-                logger.appendKeyValue("    " + key, String.format("<Data: %d>", totalBytes));
+                logger.appendKeyValue("    " + key, String.format("<Data: %d>", size));
             }
         }
 
         public void writeRecordBoundary() throws IOException {
             if (!useUrlEncode) {
-                writeLine("--%s", MIME_BOUNDARY);
+                pending.write(BOUNDARY_LINE);
             } else {
-                this.outputStream.write("&".getBytes());
+                pending.write(AMPERSAND);
             }
         }
 
         public void writeContentDisposition(String name, String filename, String contentType) throws IOException {
             if (!useUrlEncode) {
-                write("Content-Disposition: form-data; name=\"%s\"", name);
+                writeFirstBoundary();
+                pending.write(CONTENT_DISPOSITION);
+                pending.write(getBytes(name));
                 if (filename != null) {
-                    write("; filename=\"%s\"", filename);
+                    pending.write(FILENAME);
+                    pending.write(getBytes(filename));
                 }
-                writeLine(""); // newline after Content-Disposition
+                pending.write(CONTENT_DISPOSITION_END);
                 if (contentType != null) {
-                    writeLine("%s: %s", CONTENT_TYPE_HEADER, contentType);
+                    pending.write(CONTENT_TYPE);
+                    pending.write(getBytes(contentType));
+                    pending.write(CRLF);
                 }
-                writeLine(""); // blank line before content
+                pending.write(CRLF); // blank line before content
             } else {
-                this.outputStream.write(String.format("%s=", name).getBytes());
+                pending.write(getBytes(name));
+                pending.write(EQUALS);
             }
         }
 
-        public void write(String format, Object... args) throws IOException {
+        private void writeText(String text) throws IOException {
             if (!useUrlEncode) {
-                if (firstWrite) {
-                    // Prepend all of our output with a boundary string.
-                    this.outputStream.write("--".getBytes());
-                    this.outputStream.write(MIME_BOUNDARY.getBytes());
-                    this.outputStream.write("\r\n".getBytes());
-                    firstWrite = false;
-                }
-                this.outputStream.write(String.format(format, args).getBytes());
+                writeFirstBoundary();
+                pending.write(getBytes(text));
             } else {
-                this.outputStream.write(URLEncoder.encode(String.format(format, args), "UTF-8").getBytes());
+                pending.write(getBytes(URLEncoder.encode(text, "UTF-8")));
             }
         }
 
-        public void writeLine(String format, Object... args) throws IOException {
-            write(format, args);
+        private void writeLineEnd() throws IOException {
             if (!useUrlEncode) {
-                write("\r\n");
+                pending.write(CRLF);
             }
         }
 
+        private void writeFirstBoundary() throws IOException {
+            if (firstWrite) {
+                // Prepend all of our output with a boundary string.
+                pending.write(BOUNDARY_LINE);
+                firstWrite = false;
+            }
+        }
+
+        private void setCurrentRequest(Request request) {
+            if (request != currentRequest) {
+                flushPending();
+                currentRequest = request;
+            }
+        }
+
+        // turns the bytes encoded for the current request into a part
+        private void flushPending() {
+            if (pending.size() > 0) {
+                byte[] bytes = pending.toByteArray();
+                pending.reset();
+                addPart(new Part(currentRequest, bytes, null, bytes.length));
+            }
+        }
+
+        private void addPart(Part part) {
+            parts.add(part);
+            if (part.length >= 0) {
+                length += part.length;
+            } else {
+                lengthKnown = false;
+            }
+        }
+
+        private static byte[] getBytes(String string) {
+            try {
+                return string.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                // UTF-8 is always supported
+                throw new FacebookException(e);
+            }
+        }
+
+        private static class Part {
+            private final Request request;
+            private final byte[] bytes;
+            private final ParcelFileDescriptor descriptor;
+            private final long length;
+            // the descriptor was handed to a stream which closes it
+            private boolean streamed;
+
+            Part(Request request, byte[] bytes, ParcelFileDescriptor descriptor, long length) {
+                this.request = request;
+                this.bytes = bytes;
+                this.descriptor = descriptor;
+                this.length = length;
+            }
+        }
     }
 
     /**
@@ -16,7 +16,11 @@
 
 package com.facebook;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import com.facebook.internal.CacheableRequestBatch;
 import com.facebook.internal.FileLruCache;
 import com.facebook.internal.Logger;
@@ -28,11 +32,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -294,25 +301,30 @@ public class Response {
             // Try loading from cache.  If that fails, load from the network.
             if (!cacheableRequestBatch.getForceRoundTrip() && cache != null && !Utility.isNullOrEmpty(cacheKey)) {
                 try {
-                    stream = cache.get(cacheKey);
-                    if (stream != null) {
-                        return createResponsesFromStream(stream, null, requests, true);
+                    ByteBuffer buffer = cache.getBuffer(cacheKey);
+                    if (buffer != null) {
+                        Utility.disconnectQuietly(connection);
+                        HttpTimings.finish(connection);
+                        return createResponsesFromString(Utility.readBufferToString(buffer), null, requests, true);
                     }
                 } catch (FacebookException exception) { // retry via roundtrip below
                 } catch (JSONException exception) {
                 } catch (IOException exception) {
-                } finally {
-                    Utility.closeQuietly(stream);
                 }
             }
         }
 
         // Load from the network, and cache the result if not an error.
+        HttpTimings timings = HttpTimings.get(connection);
         try {
-            if (connection.getResponseCode() >= 400) {
-                stream = connection.getErrorStream();
+            connection.connect();
+            timings.onConnected();
+            int responseCode = connection.getResponseCode();
+            timings.onFirstByte();
+            if (responseCode >= 400) {
+                stream = timings.track(connection.getErrorStream());
             } else {
-                stream = connection.getInputStream();
+                stream = timings.track(connection.getInputStream());
                 if ((cache != null) && (cacheKey != null) && (stream != null)) {
                     InputStream interceptStream = cache.interceptAndPut(cacheKey, stream);
                     if (interceptStream != null) {
@@ -335,12 +347,18 @@ public class Response {
             Logger.log(LoggingBehavior.REQUESTS, RESPONSE_LOG_TAG, "Response <Error>: %s", exception);
             return constructErrorResponses(requests, connection, new FacebookException(exception));
         } finally {
-            Utility.closeQuietly(stream);
+            Settings.getHttpTransport().release(connection, stream);
+            timings.finish();
         }
     }
 
     static List<Response> createResponsesFromStream(InputStream stream, HttpURLConnection connection,
             RequestBatch requests, boolean isFromCache) throws FacebookException, JSONException, IOException {
+        // Logging the raw response needs all of it as a String anyway, and JsonReader is not available before API 11.
+        if (!Settings.isLoggingBehaviorEnabled(LoggingBehavior.INCLUDE_RAW_RESPONSES)
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return readResponsesFromStream(stream, connection, requests, isFromCache);
+        }
 
         String responseString = Utility.readStreamToString(stream);
         Logger.log(LoggingBehavior.INCLUDE_RAW_RESPONSES, RESPONSE_LOG_TAG,
@@ -362,6 +380,93 @@ public class Response {
         return responses;
     }
 
+    // Parses the response while it is read from the stream. Only one entry of a batch is held in memory at a time:
+    // each entry's body is parsed as soon as the entry was read, and the entry is turned into its Response before
+    // the next one is read. As in createResponsesFromObject, errors carry their own entry as the batch result.
+    //
+    // The Responses are still handed back together: the number of entries is only known to be right at the end of
+    // the array, and a wrong number turns every Response of the batch into an error, so none can be delivered
+    // before the whole batch was read.
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static List<Response> readResponsesFromStream(InputStream stream, HttpURLConnection connection,
+            RequestBatch requests, boolean isFromCache) throws FacebookException, JSONException, IOException {
+        assert (connection != null) || isFromCache;
+
+        int numRequests = requests.size();
+        List<Response> responses = new ArrayList<Response>(numRequests);
+        JsonReader reader = JsonValueReader.createReader(new BufferedReader(
+                new InputStreamReader(stream, "UTF-8"), Utility.DEFAULT_STREAM_BUFFER_SIZE));
+
+        if (numRequests == 1) {
+            // Single request case -- the entire response is the result, handle it the same way as
+            // createResponsesFromObject does.
+            Request request = requests.get(0);
+            Object result = JsonValueReader.readValue(reader);
+            try {
+                JSONObject jsonObject = new JSONObject();
+                jsonObject.put(BODY_KEY, result);
+                int responseCode = (connection != null) ? connection.getResponseCode() : 200;
+                jsonObject.put(CODE_KEY, responseCode);
+                responses.add(createResponseFromObject(request, connection, jsonObject, isFromCache, result));
+            } catch (JSONException e) {
+                responses.add(new Response(request, connection, new FacebookRequestError(connection, e)));
+            } catch (FacebookException e) {
+                responses.add(new Response(request, connection, new FacebookRequestError(connection, e)));
+            } catch (IOException e) {
+                responses.add(new Response(request, connection, new FacebookRequestError(connection, e)));
+            }
+        } else {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new FacebookException("Unexpected number of results");
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (responses.size() == numRequests) {
+                    throw new FacebookException("Unexpected number of results");
+                }
+
+                Request request = requests.get(responses.size());
+                Object entry = JsonValueReader.readValue(reader);
+                try {
+                    if (entry instanceof JSONObject) {
+                        parseBatchEntryBody((JSONObject) entry);
+                    }
+                    responses.add(createResponseFromObject(request, connection, entry, isFromCache, entry));
+                } catch (JSONException e) {
+                    responses.add(new Response(request, connection, new FacebookRequestError(connection, e)));
+                } catch (FacebookException e) {
+                    responses.add(new Response(request, connection, new FacebookRequestError(connection, e)));
+                } catch (IOException e) {
+                    responses.add(new Response(request, connection, new FacebookRequestError(connection, e)));
+                }
+            }
+            reader.endArray();
+
+            if (responses.size() != numRequests) {
+                throw new FacebookException("Unexpected number of results");
+            }
+        }
+
+        Logger.log(LoggingBehavior.REQUESTS, RESPONSE_LOG_TAG, "Response\n  Id: %s\n  Responses:\n%s\n",
+                requests.getId(), responses);
+
+        return responses;
+    }
+
+    // The body of a batch entry is itself JSON, encoded as a String. Parse it once here instead of having every
+    // reader of the entry parse it again.
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void parseBatchEntryBody(JSONObject entry) throws IOException, JSONException {
+        Object body = entry.opt(BODY_KEY);
+        if (body instanceof String) {
+            Object parsedBody = JsonValueReader.parse((String) body);
+            if (parsedBody instanceof JSONObject || parsedBody instanceof JSONArray) {
+                entry.put(BODY_KEY, parsedBody);
+            }
+        }
+    }
+
     private static List<Response> createResponsesFromObject(HttpURLConnection connection, List<Request> requests,
             Object object, boolean isFromCache) throws FacebookException, JSONException {
         assert (connection != null) || isFromCache;
@@ -404,7 +509,10 @@ public class Response {
             Request request = requests.get(i);
             try {
                 Object obj = jsonArray.get(i);
-                responses.add(createResponseFromObject(request, connection, obj, isFromCache, originalResult));
+                // A batch entry is its own batch result, so that both parsers report the same one and neither has
+                // to keep the whole batch.
+                Object batchResult = (numRequests == 1) ? originalResult : obj;
+                responses.add(createResponseFromObject(request, connection, obj, isFromCache, batchResult));
             } catch (JSONException e) {
                 responses.add(new Response(request, connection, new FacebookRequestError(connection, e)));
             } catch (FacebookException e) {
@@ -0,0 +1,477 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.facebook.internal.Logger;
+import com.facebook.internal.Utility;
+import com.facebook.internal.Validate;
+import com.facebook.model.GraphObject;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Uploads a video in chunks, using the start, transfer and finish phases of the Graph API's resumable upload.
+ * <p/>
+ * The server decides which bytes it wants next: the start phase and every transfer return a {@code start_offset} and
+ * an {@code end_offset}, and the next transfer sends exactly that window of the file. A response whose offsets lie
+ * outside the file, or before the window that was sent, fails the upload. The size of a chunk is therefore up to
+ * the server, and chunks are sent one after the other: the Graph API only accepts a transfer at the
+ * {@code start_offset} it returned last, so there is never a second offset which could be sent at the same time. A
+ * chunk that failed with a transient error is retried a few times before the upload gives up.
+ * <p/>
+ * The upload session and the offsets of the last response are stored in SharedPreferences, so calling
+ * {@link #start()} for the same, unchanged file again, even after the process was killed, continues at the window
+ * the server asked for last. {@link #discard(Context, File)} forgets a stored upload.
+ * <p/>
+ * The upload runs on a thread of its own. The callback is called on the main thread with the response of the finish
+ * phase, or with the first error. If it is an {@link Request.OnProgressCallback}, it is notified of the bytes
+ * transferred so far, following {@link Settings#getOnProgressThreshold()}.
+ * <p/>
+ * Like every video upload, the requests go to {@code https://graph-video.} followed by
+ * {@link Settings#getFacebookDomain() the Facebook domain}. To run the upload against a local stand-in server,
+ * redirect the connections with {@link Settings#setHttpTransport(HttpTransport)}.
+ */
+public class ResumableVideoUpload {
+    private static final String TAG = ResumableVideoUpload.class.getCanonicalName();
+    private static final String PREFERENCES = "com.facebook.sdk.ResumableVideoUpload";
+    private static final String MY_VIDEOS = "me/videos";
+
+    private static final String UPLOAD_PHASE_PARAM = "upload_phase";
+    private static final String UPLOAD_PHASE_START = "start";
+    private static final String UPLOAD_PHASE_TRANSFER = "transfer";
+    private static final String UPLOAD_PHASE_FINISH = "finish";
+    private static final String FILE_SIZE_PARAM = "file_size";
+    private static final String UPLOAD_SESSION_ID_PARAM = "upload_session_id";
+    private static final String START_OFFSET_PARAM = "start_offset";
+    private static final String END_OFFSET_PARAM = "end_offset";
+    private static final String VIDEO_FILE_CHUNK_PARAM = "video_file_chunk";
+    private static final String VIDEO_ID_PARAM = "video_id";
+
+    private static final String STATE_LENGTH = "length";
+    private static final String STATE_LAST_MODIFIED = "last_modified";
+    private static final String STATE_UPLOAD_SESSION_ID = "upload_session_id";
+    private static final String STATE_VIDEO_ID = "video_id";
+    private static final String STATE_START_OFFSET = "start_offset";
+    private static final String STATE_END_OFFSET = "end_offset";
+
+    private static final int MAX_CHUNK_ATTEMPTS = 4;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final Context context;
+    private final Session session;
+    private final File file;
+    private final Request.Callback callback;
+    private final Handler callbackHandler = new Handler(Looper.getMainLooper());
+    private String graphPath = MY_VIDEOS;
+    private Bundle parameters = new Bundle();
+
+    private volatile boolean started;
+    private volatile boolean cancelled;
+
+    // upload state, guarded by this
+    private long length;
+    private String uploadSessionId;
+    private String videoId;
+    private long startOffset;
+    private long endOffset;
+    private long chunkProgress;
+    private long reportedBytes;
+    private RequestProgress progress;
+    private Response failure;
+
+    /**
+     * Creates an upload of a video to the user's videos.
+     *
+     * @param context  the Context used to store the state of the upload
+     * @param session  the Session to use, or null; if non-null, the session must be in an opened state
+     * @param file     the video to upload
+     * @param callback a callback that will be called when the upload is completed to handle success or error
+     *                 conditions
+     */
+    public ResumableVideoUpload(Context context, Session session, File file, Request.Callback callback) {
+        Validate.notNull(context, "context");
+        Validate.notNull(file, "file");
+
+        Context applicationContext = context.getApplicationContext();
+        this.context = applicationContext != null ? applicationContext : context;
+        this.session = session;
+        this.file = file;
+        this.callback = callback;
+    }
+
+    /**
+     * Sets the graph path the video is uploaded to, "me/videos" by default.
+     *
+     * @param graphPath the graph path, e.g. a page or group id followed by "/videos"
+     */
+    public void setGraphPath(String graphPath) {
+        Validate.notNullOrEmpty(graphPath, "graphPath");
+        this.graphPath = graphPath;
+    }
+
+    /**
+     * Sets parameters sent with the finish phase, e.g. title and description of the video.
+     *
+     * @param parameters the parameters
+     */
+    public void setParameters(Bundle parameters) {
+        this.parameters = parameters != null ? new Bundle(parameters) : new Bundle();
+    }
+
+    /**
+     * Starts or resumes the upload on a new thread. An upload can only be started once.
+     */
+    public void start() {
+        if (started) {
+            throw new FacebookException("Upload already started");
+        }
+        started = true;
+
+        // the upload waits for one request after the other, it must not hold a thread of the shared executor
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final Response response = upload();
+                if (callback != null && response != null) {
+                    callbackHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onCompleted(response);
+                        }
+                    });
+                }
+            }
+        }, "ResumableVideoUpload " + file.getName()).start();
+    }
+
+    /**
+     * Stops the upload after the chunk in flight. Its state stays stored, so it can be resumed later. The callback
+     * is not called.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Forgets the stored state of an upload, so the next upload of the file starts over.
+     *
+     * @param context the Context used to store the state of the upload
+     * @param file    the video
+     */
+    public static void discard(Context context, File file) {
+        getPreferences(context).edit().remove(file.getAbsolutePath()).apply();
+    }
+
+    private Response upload() {
+        length = file.length();
+        if (length == 0) {
+            return new Response(null, null, new FacebookRequestError(null,
+                    new FacebookException("File is empty or missing: " + file)));
+        }
+
+        progress = new RequestProgress(callbackHandler, new Request(session, graphPath, null, HttpMethod.POST,
+                callback));
+        progress.addToMax(length);
+
+        restoreState();
+        if (uploadSessionId == null) {
+            Response response = startSession();
+            if (response.getError() != null) {
+                return response;
+            }
+        } else {
+            Logger.log(LoggingBehavior.REQUESTS, Log.DEBUG, TAG,
+                    "Resuming upload of " + file.getName() + " at " + startOffset + " of " + length + " bytes");
+        }
+
+        transferWindows();
+        if (cancelled) {
+            return null;
+        } else if (failure != null) {
+            return failure;
+        }
+
+        Bundle finishParameters = new Bundle(parameters);
+        finishParameters.putString(UPLOAD_PHASE_PARAM, UPLOAD_PHASE_FINISH);
+        finishParameters.putString(UPLOAD_SESSION_ID_PARAM, uploadSessionId);
+        Response response = new Request(session, graphPath, finishParameters, HttpMethod.POST).executeAndWait();
+        if (response.getError() == null || !response.getError().getErrorIsTransient()) {
+            // nothing left to resume, a failed session has to be started over anyway
+            discard(context, file);
+        }
+        return response;
+    }
+
+    private Response startSession() {
+        Bundle startParameters = new Bundle(2);
+        startParameters.putString(UPLOAD_PHASE_PARAM, UPLOAD_PHASE_START);
+        startParameters.putString(FILE_SIZE_PARAM, Long.toString(length));
+        Response response = new Request(session, graphPath, startParameters, HttpMethod.POST).executeAndWait();
+        if (response.getError() != null) {
+            return response;
+        }
+
+        GraphObject result = response.getGraphObject();
+        uploadSessionId = result != null ? Utility.coerceValueIfNullOrEmpty(
+                (String) result.getProperty(UPLOAD_SESSION_ID_PARAM), null) : null;
+        if (uploadSessionId == null) {
+            return createError(response, "Response has no " + UPLOAD_SESSION_ID_PARAM);
+        }
+        Window window = getWindow(response, 0);
+        if (window == null) {
+            return createError(response, "Unexpected offsets in the response to the start of the upload: "
+                    + response.getGraphObject());
+        }
+        videoId = (String) result.getProperty(VIDEO_ID_PARAM);
+        onWindow(window);
+        return response;
+    }
+
+    private void transferWindows() {
+        while (startOffset < length && !isStopped()) {
+            long windowStart = startOffset;
+            long windowEnd = endOffset;
+            Window next = transferChunk(windowStart, (int) (windowEnd - windowStart));
+            if (next != null && next.start > windowStart) {
+                onWindow(next);
+            } else if (!isStopped()) {
+                fail(createError(null, "The server asked for " + windowStart + "-" + windowEnd
+                        + " again after it was sent"));
+            }
+        }
+    }
+
+    // returns the window the server asks for next, or null if the chunk failed
+    private Window transferChunk(long offset, final int chunkLength) {
+        byte[] bytes;
+        try {
+            bytes = readChunk(offset, chunkLength);
+        } catch (IOException e) {
+            fail(new Response(null, null, new FacebookRequestError(null, e)));
+            return null;
+        }
+
+        Bundle transferParameters = new Bundle(4);
+        transferParameters.putString(UPLOAD_PHASE_PARAM, UPLOAD_PHASE_TRANSFER);
+        transferParameters.putString(UPLOAD_SESSION_ID_PARAM, uploadSessionId);
+        transferParameters.putString(START_OFFSET_PARAM, Long.toString(offset));
+        transferParameters.putByteArray(VIDEO_FILE_CHUNK_PARAM, bytes);
+
+        Request.OnProgressCallback chunkCallback = new Request.OnProgressCallback() {
+            @Override
+            public void onProgress(long current, long max) {
+                // the body also contains the other parameters, only count the share of the chunk
+                onChunkProgress(max > 0 ? Math.min(chunkLength, current * chunkLength / max) : 0);
+            }
+
+            @Override
+            public void onCompleted(Response response) {
+            }
+        };
+
+        for (int attempt = 1; ; attempt++) {
+            Request request = new Request(session, graphPath, transferParameters, HttpMethod.POST, chunkCallback);
+            Response response = request.executeAndWait();
+            FacebookRequestError error = response.getError();
+            if (error == null) {
+                Window window = getWindow(response, offset);
+                if (window == null) {
+                    fail(createError(response, "Unexpected offsets in the response to " + offset + "-"
+                            + (offset + chunkLength) + " of " + length + " bytes: " + response.getGraphObject()));
+                }
+                return window;
+            }
+
+            onChunkProgress(0);
+            if (attempt >= MAX_CHUNK_ATTEMPTS || !isRetryable(error) || isStopped()) {
+                fail(response);
+                return null;
+            }
+            Logger.log(LoggingBehavior.REQUESTS, Log.DEBUG, TAG, "Retrying " + offset + "-" + (offset + chunkLength)
+                    + " of " + file.getName() + " after: " + error);
+            try {
+                Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(response);
+                return null;
+            }
+        }
+    }
+
+    private static boolean isRetryable(FacebookRequestError error) {
+        // no response at all, a server error or one the server marked as transient
+        int statusCode = error.getRequestStatusCode();
+        return error.getErrorIsTransient() || statusCode == FacebookRequestError.INVALID_HTTP_STATUS_CODE
+                || statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    // returns null unless the offsets lie within the file, don't go back before windowStart and fit into one request
+    private Window getWindow(Response response, long windowStart) {
+        GraphObject result = response.getGraphObject();
+        if (result == null) {
+            return null;
+        }
+        long start = getOffset(result, START_OFFSET_PARAM);
+        long end = getOffset(result, END_OFFSET_PARAM);
+        if (start < windowStart || end < start || end > length || end - start > Integer.MAX_VALUE) {
+            return null;
+        }
+        if (start == end && start != length) {
+            // an empty window before the end of the file would never move on
+            return null;
+        }
+        return new Window(start, end);
+    }
+
+    // the offsets are sent as strings, -1 if missing or not a number
+    private static long getOffset(GraphObject result, String name) {
+        Object value = result.getProperty(name);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static Response createError(Response response, String message) {
+        return new Response(null, response != null ? response.getConnection() : null,
+                new FacebookRequestError(null, new FacebookException(message)));
+    }
+
+    private byte[] readChunk(long offset, int chunkLength) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(chunkLength);
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) == -1) {
+                    throw new IOException("File ended early: " + file);
+                }
+            }
+        } finally {
+            Utility.closeQuietly(inputStream);
+        }
+        return buffer.array();
+    }
+
+    private synchronized void onChunkProgress(long bytes) {
+        chunkProgress = bytes;
+        reportProgress();
+    }
+
+    private synchronized void reportProgress() {
+        long total = startOffset + chunkProgress;
+        // a retried chunk starts at zero again, progress never goes back
+        if (total > reportedBytes) {
+            progress.addProgress(total - reportedBytes);
+            reportedBytes = total;
+        }
+    }
+
+    private synchronized void onWindow(Window window) {
+        startOffset = window.start;
+        endOffset = window.end;
+        chunkProgress = 0;
+        saveState();
+        reportProgress();
+    }
+
+    private synchronized void fail(Response response) {
+        if (failure == null) {
+            failure = response;
+        }
+    }
+
+    private synchronized boolean isStopped() {
+        return cancelled || failure != null;
+    }
+
+    private synchronized void restoreState() {
+        String json = getPreferences(context).getString(file.getAbsolutePath(), null);
+        if (json == null) {
+            return;
+        }
+        try {
+            JSONObject state = new JSONObject(json);
+            long start = state.getLong(STATE_START_OFFSET);
+            long end = state.getLong(STATE_END_OFFSET);
+            if (state.getLong(STATE_LENGTH) != length || state.getLong(STATE_LAST_MODIFIED) != file.lastModified()
+                    || start < 0 || end < start || end > length || end - start > Integer.MAX_VALUE) {
+                discard(context, file);
+                return;
+            }
+            uploadSessionId = state.getString(STATE_UPLOAD_SESSION_ID);
+            videoId = state.optString(STATE_VIDEO_ID, null);
+            startOffset = start;
+            endOffset = end;
+            reportProgress();
+        } catch (JSONException e) {
+            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error reading upload state: " + e);
+            discard(context, file);
+        }
+    }
+
+    private synchronized void saveState() {
+        try {
+            JSONObject state = new JSONObject();
+            state.put(STATE_LENGTH, length);
+            state.put(STATE_LAST_MODIFIED, file.lastModified());
+            state.put(STATE_UPLOAD_SESSION_ID, uploadSessionId);
+            state.put(STATE_VIDEO_ID, videoId);
+            state.put(STATE_START_OFFSET, startOffset);
+            state.put(STATE_END_OFFSET, endOffset);
+            getPreferences(context).edit().putString(file.getAbsolutePath(), state.toString()).apply();
+        } catch (JSONException e) {
+            // only strings and numbers, can't happen
+            throw new FacebookException(e);
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    // the bytes the server asks for next
+    private static final class Window {
+        final long start;
+        final long end;
+
+        Window(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.Signature;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Handler;
@@ -57,6 +58,7 @@ public final class Settings {
     private static final HashSet<LoggingBehavior> loggingBehaviors =
             new HashSet<LoggingBehavior>(Arrays.asList(LoggingBehavior.DEVELOPER_ERRORS));
     private static volatile Executor executor;
+    private static volatile HttpTransport httpTransport;
     private static volatile String appVersion;
     private static volatile String applicationId;
     private static volatile String appClientToken;
@@ -64,6 +66,8 @@ public final class Settings {
     private static final String FACEBOOK_COM = "facebook.com";
     private static volatile String facebookDomain = FACEBOOK_COM;
     private static AtomicLong onProgressThreshold = new AtomicLong(65536);
+    private static volatile Bitmap.CompressFormat bitmapAttachmentFormat = Bitmap.CompressFormat.PNG;
+    private static volatile int bitmapAttachmentQuality = 100;
     private static volatile boolean platformCompatibilityEnabled;
     private static volatile boolean isDebugEnabled = BuildConfig.DEBUG;
 
@@ -261,6 +265,36 @@ public final class Settings {
         }
     }
 
+    /**
+     * Returns the HttpTransport used by the SDK for Graph API requests and image downloads.
+     *
+     * By default, this is a {@link PlatformHttpTransport}.
+     *
+     * @return an HttpTransport used by the SDK.  This will never be null.
+     */
+    public static HttpTransport getHttpTransport() {
+        synchronized (LOCK) {
+            if (Settings.httpTransport == null) {
+                Settings.httpTransport = new PlatformHttpTransport();
+            }
+        }
+        return Settings.httpTransport;
+    }
+
+    /**
+     * Sets the HttpTransport used by the SDK for Graph API requests and image downloads. Set it before the first
+     * request, so all connections share its pooling.
+     *
+     * @param httpTransport
+     *          the HttpTransport to use; must not be null.
+     */
+    public static void setHttpTransport(HttpTransport httpTransport) {
+        Validate.notNull(httpTransport, "httpTransport");
+        synchronized (LOCK) {
+            Settings.httpTransport = httpTransport;
+        }
+    }
+
     /**
      * Gets the base Facebook domain to use when making Web requests; in production code this will always be
      * "facebook.com".
@@ -498,6 +532,39 @@ public final class Settings {
         onProgressThreshold.set(threshold);
     }
 
+    /**
+     * Gets the format Bitmap parameters of requests are encoded in. The default is PNG.
+     */
+    public static Bitmap.CompressFormat getBitmapAttachmentFormat() {
+        return bitmapAttachmentFormat;
+    }
+
+    /**
+     * Gets the quality Bitmap parameters of requests are encoded with, ignored by lossless formats. The default
+     * is 100.
+     */
+    public static int getBitmapAttachmentQuality() {
+        return bitmapAttachmentQuality;
+    }
+
+    /**
+     * Sets the format Bitmap parameters of requests are encoded in. Note that the value will be read when the
+     * request is created or started, a Bitmap is encoded again if it is uploaded with a different format later.
+     *
+     * @param format  The format to compress to, e.g. JPEG for large camera images.
+     * @param quality The quality from 0 to 100, ignored by lossless formats.
+     */
+    public static void setBitmapAttachmentFormat(Bitmap.CompressFormat format, int quality) {
+        Validate.notNull(format, "format");
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("quality must be between 0 and 100");
+        }
+        synchronized (LOCK) {
+            bitmapAttachmentFormat = format;
+            bitmapAttachmentQuality = quality;
+        }
+    }
+
     /**
      * Gets whether the SDK is running in Platform Compatibility mode (i.e. making calls to v1.0 endpoints by default)
      * The default is false.
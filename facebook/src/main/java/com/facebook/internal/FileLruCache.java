@@ -25,9 +25,14 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.InvalidParameterException;
-import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 
 // This class is intended to be thread-safe.
@@ -50,6 +55,12 @@ import java.util.concurrent.atomic.AtomicLong;
 // corresponding file has been deleted.  Given this and that cache files never change other than deleting in trim()
 // or clear(),  we only have to ensure that there is at most one trim() or clear() process deleting files at any
 // given time.
+//
+// The cache files are tracked by an in-memory index in access order, guarded by lock.  Every change of the index
+// is appended to a binary journal file (see Journal) so the index can be restored on startup without listing and
+// stat-ing the directory.  Caches written before the journal existed have no journal file; their index is rebuilt
+// once from the stream headers and file modification times of the cache files.  The index is loaded on the executor
+// right after construction, or by the first caller that needs it before that.
 
 /**
  * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
@@ -60,6 +71,8 @@ public final class FileLruCache {
     static final String TAG = FileLruCache.class.getSimpleName();
     private static final String HEADER_CACHEKEY_KEY = "key";
     private static final String HEADER_CACHE_CONTENT_TAG_KEY = "tag";
+    // Files below this size are read into a heap buffer, mapping them costs more than copying them.
+    private static final int MAP_THRESHOLD = 32 * 1024;
 
     private static final AtomicLong bufferIndex = new AtomicLong();
 
@@ -70,6 +83,12 @@ public final class FileLruCache {
     private boolean isTrimInProgress;
     private final Object lock;
     private AtomicLong lastClearCacheTime = new AtomicLong(0);
+    // Cache file name -> entry, eldest access first.  Guarded by lock.
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final Journal journal;
+    private long sizeInBytes;
+    // Guarded by lock.
+    private boolean isLoaded;
 
     // The value of tag should be a final String that works as a directory name.
     public FileLruCache(Context context, String tag, Limits limits) {
@@ -77,12 +96,48 @@ public final class FileLruCache {
         this.limits = limits;
         this.directory = new File(context.getCacheDir(), tag);
         this.lock = new Object();
+        this.journal = new Journal(this.directory);
+
+        // The cache may be created on the UI thread, so the journal is read in the background.  Whatever needs the
+        // index first waits for it, or loads it itself if the executor did not get to it yet.
+        try {
+            Settings.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (lock) {
+                        ensureLoaded();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // loaded on first use instead
+        }
+    }
+
+    // Must be called with lock held.
+    private void ensureLoaded() {
+        if (isLoaded) {
+            return;
+        }
+        isLoaded = true;
 
         // Ensure the cache dir exists
         if (this.directory.mkdirs() || this.directory.isDirectory()) {
             // Remove any stale partially-written files from a previous run
             BufferFile.deleteAll(this.directory);
         }
+
+        if (!journal.read(index)) {
+            rebuildIndex();
+        } else if (journal.isTruncated()) {
+            // Appending after a torn record would make every later record unreadable.
+            journal.rewrite(index);
+        } else {
+            journal.openForAppend();
+        }
+        for (Entry entry : index.values()) {
+            sizeInBytes += entry.size;
+        }
     }
 
     // This is not robust to files changing dynamically underneath it and should therefore only be used
@@ -101,7 +156,7 @@ public final class FileLruCache {
             }
         }
 
-        File[] files = this.directory.listFiles();
+        File[] files = this.directory.listFiles(BufferFile.excludeBufferFiles());
         long total = 0;
         if (files != null) {
             for (File file : files) {
@@ -116,12 +171,20 @@ public final class FileLruCache {
     }
 
     public InputStream get(String key, String contentTag) throws IOException {
-        File file = new File(this.directory, Utility.md5hash(key));
+        String name = Utility.md5hash(key);
+        if (!touch(name, key, contentTag)) {
+            return null;
+        }
 
+        File file = new File(this.directory, name);
         FileInputStream input = null;
         try {
             input = new FileInputStream(file);
         } catch (IOException e) {
+            // The file was removed behind our back, forget about it.
+            synchronized (lock) {
+                removeFromIndex(name);
+            }
             return null;
         }
 
@@ -129,34 +192,90 @@ public final class FileLruCache {
         boolean success = false;
 
         try {
-            JSONObject header = StreamHeader.readHeader(buffered);
-            if (header == null) {
+            // Key and content tag were already checked against the index, no need to parse the header.
+            if (!StreamHeader.skipHeader(buffered)) {
                 return null;
             }
 
-            String foundKey = header.optString(HEADER_CACHEKEY_KEY);
-            if ((foundKey == null) || !foundKey.equals(key)) {
-                return null;
+            success = true;
+            return buffered;
+        } finally {
+            if (!success) {
+                buffered.close();
             }
+        }
+    }
+
+    public ByteBuffer getBuffer(String key) throws IOException {
+        return getBuffer(key, null);
+    }
+
+    // Returns the cached data without copying it through streams, or null if it is not cached.  The buffer starts
+    // after the stream header.  Large files are memory mapped, small ones are read into a heap buffer that has a
+    // backing array (see ByteBuffer.hasArray()).
+    public ByteBuffer getBuffer(String key, String contentTag) throws IOException {
+        String name = Utility.md5hash(key);
+        if (!touch(name, key, contentTag)) {
+            return null;
+        }
 
-            String headerContentTag = header.optString(HEADER_CACHE_CONTENT_TAG_KEY, null);
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(new File(this.directory, name), "r");
+        } catch (FileNotFoundException e) {
+            synchronized (lock) {
+                removeFromIndex(name);
+            }
+            return null;
+        }
 
-            if ((contentTag == null && headerContentTag != null) ||
-                    (contentTag != null && !contentTag.equals(headerContentTag))) {
+        try {
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
                 return null;
             }
 
-            long accessTime = new Date().getTime();
-            Logger.log(LoggingBehavior.CACHE, TAG, "Setting lastModified to " + Long.valueOf(accessTime) + " for "
-                    + file.getName());
-            file.setLastModified(accessTime);
+            ByteBuffer buffer;
+            if (length < MAP_THRESHOLD) {
+                buffer = ByteBuffer.allocate((int) length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        return null;
+                    }
+                }
+                buffer.flip();
+            } else {
+                // The mapping stays valid after the channel is closed.
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
 
-            success = true;
-            return buffered;
+            // Key and content tag were already checked against the index, no need to parse the header.
+            int headerSize = StreamHeader.readHeaderSize(buffer);
+            if ((headerSize < 0) || (headerSize > buffer.remaining())) {
+                return null;
+            }
+            buffer.position(buffer.position() + headerSize);
+            return buffer.slice();
         } finally {
-            if (!success) {
-                buffered.close();
+            Utility.closeQuietly(file);
+        }
+    }
+
+    // Looks up the entry for a read and marks it as most recently used.  Returns false on a cache miss.
+    private boolean touch(String name, String key, String contentTag) {
+        synchronized (lock) {
+            ensureLoaded();
+            // The index is in access order, so this lookup also moves the entry to the end.
+            Entry entry = index.get(name);
+            if ((entry == null) || !entry.matches(key, contentTag)) {
+                return false;
+            }
+            journal.appendRead(name);
+            if (journal.needsCompaction(index.size())) {
+                postTrim();
             }
+            return true;
         }
     }
 
@@ -164,7 +283,11 @@ public final class FileLruCache {
         return openPutStream(key, null);
     }
 
-    public OutputStream openPutStream(final String key, String contentTag) throws IOException {
+    public OutputStream openPutStream(final String key, final String contentTag) throws IOException {
+        synchronized (lock) {
+            // stale buffer files are deleted while loading, that must not hit this one
+            ensureLoaded();
+        }
         final File buffer = BufferFile.newFile(this.directory);
         buffer.delete();
         if (!buffer.createNewFile()) {
@@ -188,7 +311,7 @@ public final class FileLruCache {
                 if (bufferFileCreateTime < lastClearCacheTime.get()) {
                     buffer.delete();
                 } else {
-                    renameToTargetAndTrim(key, buffer);
+                    renameToTargetAndTrim(key, contentTag, buffer);
                 }
             }
         };
@@ -224,6 +347,12 @@ public final class FileLruCache {
         // get the current directory listing of files to delete
         final File[] filesToDelete = directory.listFiles(BufferFile.excludeBufferFiles());
         lastClearCacheTime.set(System.currentTimeMillis());
+        synchronized (lock) {
+            ensureLoaded();
+            index.clear();
+            sizeInBytes = 0;
+            journal.rewrite(index);
+        }
         if (filesToDelete != null) {
             Settings.getExecutor().execute(new Runnable() {
                 @Override
@@ -236,19 +365,84 @@ public final class FileLruCache {
         }
     }
 
-    private void renameToTargetAndTrim(String key, File buffer) {
-        final File target = new File(directory, Utility.md5hash(key));
+    private void renameToTargetAndTrim(String key, String contentTag, File buffer) {
+        final String name = Utility.md5hash(key);
+        final File target = new File(directory, name);
 
         // This is triggered by close().  By the time close() returns, the file should be cached, so this needs to
         // happen synchronously on this thread.
         //
-        // However, it does not need to be synchronized, since in the race we will just start an unnecesary trim
-        // operation.  Avoiding the cost of holding the lock across the file operation seems worth this cost.
+        // The rename itself does not need to be synchronized.  Avoiding the cost of holding the lock across the file
+        // operation seems worth it, only the index update below has to be.
         if (!buffer.renameTo(target)) {
             buffer.delete();
+            return;
+        }
+
+        Entry entry = new Entry(key, Utility.isNullOrEmpty(contentTag) ? null : contentTag, target.length());
+        synchronized (lock) {
+            ensureLoaded();
+            Entry previous = index.put(name, entry);
+            if (previous != null) {
+                sizeInBytes -= previous.size;
+            }
+            sizeInBytes += entry.size;
+            journal.appendPut(name, entry, previous != null);
+
+            if ((sizeInBytes > limits.getByteCount()) || (index.size() > limits.getFileCount())) {
+                postTrim();
+            }
+        }
+    }
+
+    // Must be called with lock held.
+    private void removeFromIndex(String name) {
+        Entry entry = index.remove(name);
+        if (entry != null) {
+            sizeInBytes -= entry.size;
+            journal.appendRemove(name);
+        }
+    }
+
+    // Restores the index of a cache that has no (readable) journal from the cache files themselves.  This reads the
+    // stream header of every file once, so it should only happen the first time a cache directory is opened.
+    // Must be called with lock held.
+    private void rebuildIndex() {
+        Logger.log(LoggingBehavior.CACHE, TAG, "rebuilding index of " + directory.getName());
+        index.clear();
+
+        PriorityQueue<ModifiedFile> heap = new PriorityQueue<ModifiedFile>();
+        File[] files = directory.listFiles(BufferFile.excludeBufferFiles());
+        if (files != null) {
+            for (File file : files) {
+                heap.add(new ModifiedFile(file));
+            }
+        }
+
+        // Oldest first, so the access order of the index matches the previous lastModified based eviction.
+        while (!heap.isEmpty()) {
+            File file = heap.remove().getFile();
+            JSONObject header = null;
+            InputStream input = null;
+            try {
+                input = new BufferedInputStream(new FileInputStream(file), Utility.DEFAULT_STREAM_BUFFER_SIZE);
+                header = StreamHeader.readHeader(input);
+            } catch (IOException e) {
+                Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error reading header of " + file.getName() + ": " + e);
+            } finally {
+                Utility.closeQuietly(input);
+            }
+
+            String key = header != null ? header.optString(HEADER_CACHEKEY_KEY, null) : null;
+            if (key == null) {
+                file.delete();
+                continue;
+            }
+            String contentTag = header.optString(HEADER_CACHE_CONTENT_TAG_KEY, null);
+            index.put(file.getName(), new Entry(key, contentTag, file.length()));
         }
 
-        postTrim();
+        journal.rewrite(index);
     }
 
     // Opens an output stream for the key, and creates an input stream wrapper to copy
@@ -284,28 +478,26 @@ public final class FileLruCache {
         }
         try {
             Logger.log(LoggingBehavior.CACHE, TAG, "trim started");
-            PriorityQueue<ModifiedFile> heap = new PriorityQueue<ModifiedFile>();
-            long size = 0;
-            long count = 0;
-            File[] filesToTrim =this.directory.listFiles(BufferFile.excludeBufferFiles());
-            if (filesToTrim != null) {
-                for (File file : filesToTrim) {
-                    ModifiedFile modified = new ModifiedFile(file);
-                    heap.add(modified);
-                    Logger.log(LoggingBehavior.CACHE, TAG, "  trim considering time=" + Long.valueOf(modified.getModified())
-                            + " name=" + modified.getFile().getName());
-
-                    size += file.length();
-                    count++;
+            synchronized (lock) {
+                ensureLoaded();
+                // The index iterates from the least recently used entry, so this only touches evicted entries.
+                Iterator<Map.Entry<String, Entry>> iterator = index.entrySet().iterator();
+                while (((sizeInBytes > limits.getByteCount()) || (index.size() > limits.getFileCount()))
+                        && iterator.hasNext()) {
+                    Map.Entry<String, Entry> eldest = iterator.next();
+                    String name = eldest.getKey();
+                    Logger.log(LoggingBehavior.CACHE, TAG, "  trim removing " + name);
+                    iterator.remove();
+                    sizeInBytes -= eldest.getValue().size;
+                    journal.appendRemove(name);
+                    new File(directory, name).delete();
                 }
-            }
 
-            while ((size > limits.getByteCount()) || (count > limits.getFileCount())) {
-                File file = heap.remove().getFile();
-                Logger.log(LoggingBehavior.CACHE, TAG, "  trim removing " + file.getName());
-                size -= file.length();
-                count--;
-                file.delete();
+                if (journal.needsCompaction(index.size())) {
+                    journal.rewrite(index);
+                } else {
+                    journal.flush();
+                }
             }
         } finally {
             synchronized (lock) {
@@ -320,7 +512,8 @@ public final class FileLruCache {
         private static final FilenameFilter filterExcludeBufferFiles = new FilenameFilter() {
             @Override
             public boolean accept(File dir, String filename) {
-                return !filename.startsWith(FILE_NAME_PREFIX);
+                // The journal is not a cache file either.
+                return !filename.startsWith(FILE_NAME_PREFIX) && !filename.startsWith(Journal.FILE_NAME_PREFIX);
             }
         };
         private static final FilenameFilter filterExcludeNonBufferFiles = new FilenameFilter() {
@@ -379,22 +572,31 @@ public final class FileLruCache {
             stream.write(headerBytes);
         }
 
-        static JSONObject readHeader(InputStream stream) throws IOException {
-            int version = stream.read();
-            if (version != HEADER_VERSION) {
-                return null;
+        // Positions the stream after the header without parsing it.
+        static boolean skipHeader(InputStream stream) throws IOException {
+            int headerSize = readHeaderSize(stream);
+            if (headerSize < 0) {
+                return false;
             }
 
-            int headerSize = 0;
-            for (int i = 0; i < 3; i++) {
-                int b = stream.read();
-                if (b == -1) {
+            long skipped = 0;
+            while (skipped < headerSize) {
+                long count = stream.skip(headerSize - skipped);
+                if (count < 1) {
                     Logger.log(LoggingBehavior.CACHE, TAG,
-                            "readHeader: stream.read returned -1 while reading header size");
-                    return null;
+                            "skipHeader: stream.skip stopped at " + Long.valueOf(skipped) + " when expected "
+                                    + headerSize);
+                    return false;
                 }
-                headerSize <<= 8;
-                headerSize += b & 0xff;
+                skipped += count;
+            }
+            return true;
+        }
+
+        static JSONObject readHeader(InputStream stream) throws IOException {
+            int headerSize = readHeaderSize(stream);
+            if (headerSize < 0) {
+                return null;
             }
 
             byte[] headerBytes = new byte[headerSize];
@@ -426,6 +628,275 @@ public final class FileLruCache {
 
             return header;
         }
+
+        // Same as readHeaderSize(InputStream), leaves the buffer positioned at the JSON blob.
+        static int readHeaderSize(ByteBuffer buffer) {
+            if ((buffer.remaining() < 4) || (buffer.get() != HEADER_VERSION)) {
+                return -1;
+            }
+
+            int headerSize = 0;
+            for (int i = 0; i < 3; i++) {
+                headerSize <<= 8;
+                headerSize += buffer.get() & 0xff;
+            }
+            return headerSize;
+        }
+
+        // Returns the size of the JSON blob or -1 if the stream does not start with a valid header.
+        private static int readHeaderSize(InputStream stream) throws IOException {
+            int version = stream.read();
+            if (version != HEADER_VERSION) {
+                return -1;
+            }
+
+            int headerSize = 0;
+            for (int i = 0; i < 3; i++) {
+                int b = stream.read();
+                if (b == -1) {
+                    Logger.log(LoggingBehavior.CACHE, TAG,
+                            "readHeader: stream.read returned -1 while reading header size");
+                    return -1;
+                }
+                headerSize <<= 8;
+                headerSize += b & 0xff;
+            }
+            return headerSize;
+        }
+    }
+
+    // Appends every change of the index to a binary file, so the index survives restarts without a directory scan.
+    // Reads only append an access record; the journal is compacted once it holds mostly redundant records.
+    //
+    // The format is as follows:
+    //     int: magic
+    //     int: journal version
+    // followed by records, each starting with an op byte:
+    //     PUT:    UTF file name, UTF key, UTF content tag ("" for none), long size
+    //     READ:   UTF file name
+    //     REMOVE: UTF file name
+    //
+    // A truncated last record (e.g. the process died while writing it) is ignored, and the journal is rewritten from
+    // the index before anything is appended again.
+    private static final class Journal {
+        static final String FILE_NAME_PREFIX = "journal";
+        private static final String FILE_NAME = FILE_NAME_PREFIX;
+        private static final String TEMP_FILE_NAME = FILE_NAME_PREFIX + ".tmp";
+        private static final int MAGIC = 0x46424c43;
+        private static final int VERSION = 1;
+        private static final byte OP_PUT = 1;
+        private static final byte OP_READ = 2;
+        private static final byte OP_REMOVE = 3;
+        private static final int COMPACT_THRESHOLD = 2000;
+
+        private final File file;
+        private final File tempFile;
+        private DataOutputStream output;
+        private int redundantRecordCount;
+        private boolean isTruncated;
+
+        Journal(File directory) {
+            this.file = new File(directory, FILE_NAME);
+            this.tempFile = new File(directory, TEMP_FILE_NAME);
+        }
+
+        // Replays the journal into index.  Returns false if there is no usable journal.
+        boolean read(Map<String, Entry> index) {
+            if (!file.exists()) {
+                return false;
+            }
+
+            DataInputStream input = null;
+            try {
+                input = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                        Utility.DEFAULT_STREAM_BUFFER_SIZE));
+                if ((input.readInt() != MAGIC) || (input.readInt() != VERSION)) {
+                    return false;
+                }
+
+                int recordCount = 0;
+                while (true) {
+                    int op = input.read();
+                    if (op == -1) {
+                        break;
+                    }
+                    String name = input.readUTF();
+                    if (op == OP_PUT) {
+                        String key = input.readUTF();
+                        String contentTag = input.readUTF();
+                        long size = input.readLong();
+                        index.put(name, new Entry(key, contentTag.length() == 0 ? null : contentTag, size));
+                    } else if (op == OP_READ) {
+                        index.get(name);
+                    } else if (op == OP_REMOVE) {
+                        index.remove(name);
+                    } else {
+                        Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Unknown journal record " + op);
+                        return false;
+                    }
+                    recordCount++;
+                }
+                redundantRecordCount = recordCount - index.size();
+                return true;
+            } catch (EOFException e) {
+                // truncated record at the end, everything before it is fine
+                isTruncated = true;
+                redundantRecordCount = index.size();
+                return true;
+            } catch (IOException e) {
+                Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error reading cache journal: " + e);
+                index.clear();
+                return false;
+            } finally {
+                Utility.closeQuietly(input);
+            }
+        }
+
+        // Whether the last read stopped at a torn record.
+        boolean isTruncated() {
+            return isTruncated;
+        }
+
+        void openForAppend() {
+            try {
+                output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true),
+                        Utility.DEFAULT_STREAM_BUFFER_SIZE));
+            } catch (IOException e) {
+                Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error opening cache journal: " + e);
+                output = null;
+            }
+        }
+
+        void appendPut(String name, Entry entry, boolean replaced) {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.writeByte(OP_PUT);
+                output.writeUTF(name);
+                output.writeUTF(entry.key);
+                output.writeUTF(entry.contentTag == null ? "" : entry.contentTag);
+                output.writeLong(entry.size);
+                output.flush();
+            } catch (IOException e) {
+                onWriteError(e);
+            }
+            if (replaced) {
+                redundantRecordCount++;
+            }
+        }
+
+        // Access records are not flushed right away, losing a few of them only affects the eviction order.
+        void appendRead(String name) {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.writeByte(OP_READ);
+                output.writeUTF(name);
+            } catch (IOException e) {
+                onWriteError(e);
+            }
+            redundantRecordCount++;
+        }
+
+        void appendRemove(String name) {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.writeByte(OP_REMOVE);
+                output.writeUTF(name);
+                output.flush();
+            } catch (IOException e) {
+                onWriteError(e);
+            }
+            // both this record and the PUT it cancels are redundant now
+            redundantRecordCount += 2;
+        }
+
+        void flush() {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.flush();
+            } catch (IOException e) {
+                onWriteError(e);
+            }
+        }
+
+        boolean needsCompaction(int entryCount) {
+            return (output == null) ||
+                    ((redundantRecordCount >= COMPACT_THRESHOLD) && (redundantRecordCount >= entryCount));
+        }
+
+        // Writes a journal containing only the current index, in access order.
+        void rewrite(Map<String, Entry> index) {
+            Utility.closeQuietly(output);
+            output = null;
+
+            DataOutputStream temp = null;
+            boolean success = false;
+            try {
+                temp = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile),
+                        Utility.DEFAULT_STREAM_BUFFER_SIZE));
+                temp.writeInt(MAGIC);
+                temp.writeInt(VERSION);
+                for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                    Entry value = entry.getValue();
+                    temp.writeByte(OP_PUT);
+                    temp.writeUTF(entry.getKey());
+                    temp.writeUTF(value.key);
+                    temp.writeUTF(value.contentTag == null ? "" : value.contentTag);
+                    temp.writeLong(value.size);
+                }
+                temp.close();
+                temp = null;
+                success = tempFile.renameTo(file);
+            } catch (IOException e) {
+                Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error writing cache journal: " + e);
+            } finally {
+                Utility.closeQuietly(temp);
+            }
+
+            if (!success) {
+                tempFile.delete();
+                // Without a journal the next start rebuilds the index from the cache files.
+                file.delete();
+                return;
+            }
+            redundantRecordCount = 0;
+            isTruncated = false;
+            openForAppend();
+        }
+
+        private void onWriteError(IOException e) {
+            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error writing cache journal: " + e);
+            Utility.closeQuietly(output);
+            output = null;
+            // The journal is incomplete now, make sure it is not trusted on the next start.
+            file.delete();
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final String contentTag;
+        final long size;
+
+        Entry(String key, String contentTag, long size) {
+            this.key = key;
+            this.contentTag = contentTag;
+            this.size = size;
+        }
+
+        boolean matches(String key, String contentTag) {
+            if (!this.key.equals(key)) {
+                return false;
+            }
+            return (contentTag == null) ? (this.contentTag == null) : contentTag.equals(this.contentTag);
+        }
     }
 
     private static class CloseCallbackOutputStream extends OutputStream {
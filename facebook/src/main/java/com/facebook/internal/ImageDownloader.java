@@ -18,12 +18,13 @@ package com.facebook.internal;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Handler;
 import android.os.Looper;
 import com.facebook.FacebookException;
+import com.facebook.HttpConnections;
 import com.facebook.android.R;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -31,17 +32,37 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+// Requests for the same image share a single Fetch, no matter which caller made them.  pendingRequests maps every
+// caller's request to its DownloaderContext, and each context points to the Fetch doing the work for it.  A Fetch
+// is registered in inFlightFetches under the uri it is currently working on: the requested uri first, and the
+// redirect target as soon as one is known, from the UrlRedirectCache or from the response of the server.  If another
+// Fetch already works on the redirect target, the waiters are handed over to it.
+//
+// A Fetch reads the cache or downloads once, whatever sizes its waiters asked for.  The compressed bytes are then
+// decoded once per distinct target size and the result is delivered to every waiter.  Cancelling a
+// request only removes its waiter; the Fetch itself is cancelled (and a running download disconnected) when the
+// last waiter is gone.
+//
+// Decoded images are kept in the ImageMemoryCache, so requests for images that were shown before are answered
+// without reading the disk cache or decoding again.  Requests with a target size get a subsampled image, which
+// is cached separately from the full resolution one.
+//
+// All bookkeeping is guarded by the pendingRequests lock.
 public class ImageDownloader {
     private static final int DOWNLOAD_QUEUE_MAX_CONCURRENT = WorkQueue.DEFAULT_MAX_CONCURRENT;
     private static final int CACHE_READ_QUEUE_MAX_CONCURRENT = 2;
     private static Handler handler;
-    private static WorkQueue downloadQueue = new WorkQueue(DOWNLOAD_QUEUE_MAX_CONCURRENT);
-    private static WorkQueue cacheReadQueue = new WorkQueue(CACHE_READ_QUEUE_MAX_CONCURRENT);
+    private static WorkQueue downloadQueue = new WorkQueue(DOWNLOAD_QUEUE_MAX_CONCURRENT, "ImageDownloader.download");
+    private static WorkQueue cacheReadQueue = new WorkQueue(CACHE_READ_QUEUE_MAX_CONCURRENT, "ImageDownloader.cacheRead");
 
     private static final Map<RequestKey, DownloaderContext> pendingRequests = new HashMap<RequestKey, DownloaderContext>();
+    private static final Map<String, Fetch> inFlightFetches = new HashMap<String, Fetch>();
 
     /**
      * Downloads the image specified in the passed in request.
@@ -63,36 +84,62 @@ public class ImageDownloader {
             DownloaderContext downloaderContext = pendingRequests.get(key);
             if (downloaderContext != null) {
                 downloaderContext.request = request;
-                downloaderContext.isCancelled = false;
-                downloaderContext.workItem.moveToFront();
+                prioritize(downloaderContext.fetch, request);
+                return;
+            }
+
+            Bitmap memoryCachedBitmap = ImageMemoryCache.getInstance(request.getContext())
+                    .get(key.uri, request.getTargetWidth(), request.getTargetHeight());
+            if (memoryCachedBitmap != null) {
+                // Already decoded, skip the queues and the disk cache.
+                issueResponse(request, null, memoryCachedBitmap, false);
+                return;
+            }
+
+            downloaderContext = new DownloaderContext();
+            downloaderContext.request = request;
+            pendingRequests.put(key, downloaderContext);
+
+            Fetch fetch = inFlightFetches.get(key.uri.toString());
+            if (fetch != null) {
+                // Somebody else is already loading this image, wait for their result.
+                prioritize(fetch, request);
             } else {
-                enqueueCacheRead(request, key, request.isCachedRedirectAllowed());
+                fetch = new Fetch(request.getContext(), key.uri);
+                fetch.priority = request.isPrefetch() ? WorkQueue.Priority.PREFETCH : WorkQueue.Priority.VISIBLE;
+                inFlightFetches.put(fetch.getKey(), fetch);
+                enqueueCacheRead(fetch, request.isCachedRedirectAllowed());
             }
+            fetch.waiters.add(key);
+            downloaderContext.fetch = fetch;
         }
     }
 
     public static boolean cancelRequest(ImageRequest request) {
-        boolean cancelled = false;
         RequestKey key = new RequestKey(request.getImageUri(), request.getCallerTag());
         synchronized (pendingRequests) {
-            DownloaderContext downloaderContext = pendingRequests.get(key);
-            if (downloaderContext != null) {
-                // If we were able to find the request in our list of pending requests, then we will
-                // definitely be able to prevent an ImageResponse from being issued. This is regardless
-                // of whether a cache-read or network-download is underway for this request.
-                cancelled = true;
+            DownloaderContext downloaderContext = pendingRequests.remove(key);
+            if (downloaderContext == null) {
+                return false;
+            }
 
-                if (downloaderContext.workItem.cancel()) {
-                    pendingRequests.remove(key);
-                } else {
-                    // May be attempting a cache-read right now. So keep track of the cancellation
-                    // to prevent network calls etc
-                    downloaderContext.isCancelled = true;
+            // If we were able to find the request in our list of pending requests, then we will
+            // definitely be able to prevent an ImageResponse from being issued, since responses
+            // are only issued to the current waiters of a fetch.
+            Fetch fetch = downloaderContext.fetch;
+            fetch.waiters.remove(key);
+            if (fetch.waiters.isEmpty()) {
+                // Nobody is interested in this image anymore.
+                fetch.isCancelled = true;
+                unregisterFetch(fetch);
+                if (!fetch.workItem.cancel()) {
+                    // Already running, abort the download if there is one.
+                    Utility.disconnectQuietly(fetch.connection);
                 }
             }
         }
 
-        return cancelled;
+        return true;
     }
 
     public static void prioritizeRequest(ImageRequest request) {
@@ -100,7 +147,9 @@ public class ImageDownloader {
         synchronized (pendingRequests) {
             DownloaderContext downloaderContext = pendingRequests.get(key);
             if (downloaderContext != null) {
-                downloaderContext.workItem.moveToFront();
+                Fetch fetch = downloaderContext.fetch;
+                fetch.priority = WorkQueue.Priority.VISIBLE;
+                fetch.workItem.setPriority(fetch.priority, true);
             }
         }
     }
@@ -110,113 +159,153 @@ public class ImageDownloader {
         UrlRedirectCache.clearCache(context);
     }
 
-    private static void enqueueCacheRead(ImageRequest request, RequestKey key, boolean allowCachedRedirects) {
-        enqueueRequest(
-                request,
-                key,
-                cacheReadQueue,
-                new CacheReadWorkItem(request.getContext(), key, allowCachedRedirects));
+    // Moves the fetch to the front of its lane, or into the visible lane if a request for a shown image joined a
+    // prefetch.  Must be called with the pendingRequests lock held.
+    private static void prioritize(Fetch fetch, ImageRequest request) {
+        if (!request.isPrefetch()) {
+            fetch.priority = WorkQueue.Priority.VISIBLE;
+        }
+        fetch.workItem.setPriority(fetch.priority, true);
     }
 
-    private static void enqueueDownload(ImageRequest request, RequestKey key) {
-        enqueueRequest(
-                request,
-                key,
-                downloadQueue,
-                new DownloadImageWorkItem(request.getContext(), key));
+    // Must be called with the pendingRequests lock held.
+    private static void enqueueCacheRead(Fetch fetch, boolean allowCachedRedirects) {
+        fetch.workItem = cacheReadQueue.addActiveWorkItem(
+                new CacheReadWorkItem(fetch, allowCachedRedirects), true, fetch.priority);
     }
 
-    private static void enqueueRequest(
-            ImageRequest request,
-            RequestKey key,
-            WorkQueue workQueue,
-            Runnable workItem) {
+    // Must be called with the pendingRequests lock held.
+    private static void enqueueDownload(Fetch fetch) {
+        fetch.workItem = downloadQueue.addActiveWorkItem(new DownloadImageWorkItem(fetch), true, fetch.priority);
+    }
+
+    // Must be called with the pendingRequests lock held.
+    private static void unregisterFetch(Fetch fetch) {
+        String fetchKey = fetch.getKey();
+        if (inFlightFetches.get(fetchKey) == fetch) {
+            inFlightFetches.remove(fetchKey);
+        }
+    }
+
+    // Decodes the image once for each target size the waiters asked for.  image is null if there was an error.
+    private static void issueResponse(
+            Fetch fetch,
+            Exception error,
+            ByteBuffer image,
+            boolean isCachedRedirect) {
+        List<ImageRequest> requests = new ArrayList<ImageRequest>();
         synchronized (pendingRequests) {
-            DownloaderContext downloaderContext = new DownloaderContext();
-            downloaderContext.request = request;
-            pendingRequests.put(key, downloaderContext);
+            if (fetch.isCancelled) {
+                return;
+            }
+            unregisterFetch(fetch);
+            for (RequestKey key : fetch.waiters) {
+                DownloaderContext completedRequestContext = pendingRequests.remove(key);
+                if (completedRequestContext != null) {
+                    requests.add(completedRequestContext.request);
+                }
+            }
+            fetch.waiters.clear();
+        }
 
-            // The creation of the WorkItem should be done after the pending request has been registered.
-            // This is necessary since the WorkItem might kick off right away and attempt to retrieve
-            // the request's DownloaderContext prior to it being ready for access.
-            //
-            // It is also necessary to hold on to the lock until after the workItem is created, since
-            // calls to cancelRequest or prioritizeRequest might come in and expect a registered
-            // request to have a workItem available as well.
-            downloaderContext.workItem = workQueue.addActiveWorkItem(workItem);
+        ImageMemoryCache memoryCache = ImageMemoryCache.getInstance(fetch.context);
+        Map<String, Bitmap> bitmaps = new HashMap<String, Bitmap>();
+        for (ImageRequest request : requests) {
+            int targetWidth = request.getTargetWidth();
+            int targetHeight = request.getTargetHeight();
+            Bitmap bitmap = null;
+            if (image != null) {
+                String sizeKey = ImageMemoryCache.getKey(fetch.uri, targetWidth, targetHeight);
+                if (bitmaps.containsKey(sizeKey)) {
+                    bitmap = bitmaps.get(sizeKey);
+                } else {
+                    bitmap = memoryCache.get(fetch.uri, targetWidth, targetHeight);
+                    if (bitmap == null) {
+                        bitmap = ImageResponseCache.decodeImage(image.duplicate(), targetWidth, targetHeight);
+                        if (bitmap != null) {
+                            memoryCache.put(fetch.uri, targetWidth, targetHeight, bitmap);
+                        }
+                    }
+                    bitmaps.put(sizeKey, bitmap);
+                }
+                if (bitmap != null) {
+                    memoryCache.put(request.getImageUri(), targetWidth, targetHeight, bitmap);
+                }
+            }
+            issueResponse(request, error, bitmap, isCachedRedirect);
         }
     }
 
     private static void issueResponse(
-            RequestKey key,
+            final ImageRequest request,
             final Exception error,
             final Bitmap bitmap,
             final boolean isCachedRedirect) {
-        // Once the old downloader context is removed, we are thread-safe since this is the
-        // only reference to it
-        DownloaderContext completedRequestContext = removePendingRequest(key);
-        if (completedRequestContext != null && !completedRequestContext.isCancelled) {
-            final ImageRequest request = completedRequestContext.request;
-            final ImageRequest.Callback callback = request.getCallback();
-            if (callback != null) {
-                getHandler().post(new Runnable() {
-                    @Override
-                    public void run() {
-                        ImageResponse response = new ImageResponse(
-                                request,
-                                error,
-                                isCachedRedirect,
-                                bitmap);
-                        callback.onCompleted(response);
-                    }
-                });
-            }
+        final ImageRequest.Callback callback = request.getCallback();
+        if (callback != null) {
+            getHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    ImageResponse response = new ImageResponse(
+                            request,
+                            error,
+                            isCachedRedirect,
+                            bitmap);
+                    callback.onCompleted(response);
+                }
+            });
         }
     }
 
-    private static void readFromCache(RequestKey key, Context context, boolean allowCachedRedirects) {
-        InputStream cachedStream = null;
+    private static void readFromCache(Fetch fetch, boolean allowCachedRedirects) {
+        Context context = fetch.context;
         boolean isCachedRedirect = false;
         if (allowCachedRedirects) {
-            URI redirectUri = UrlRedirectCache.getRedirectedUri(context, key.uri);
-            if (redirectUri != null) {
-                cachedStream = ImageResponseCache.getCachedImageStream(redirectUri, context);
-                isCachedRedirect = cachedStream != null;
+            URI redirectUri = UrlRedirectCache.getRedirectedUri(context, fetch.uri);
+            if (redirectUri != null && !redirectUri.equals(fetch.uri)) {
+                // Work on the redirect target from here on, so that requests for it and for the other uris
+                // redirecting to it share this fetch, and a download skips the redirect.
+                synchronized (pendingRequests) {
+                    if (fetch.isCancelled || rekeyFetch(fetch, redirectUri)) {
+                        return;
+                    }
+                }
+                isCachedRedirect = true;
             }
         }
 
-        if (!isCachedRedirect) {
-            cachedStream = ImageResponseCache.getCachedImageStream(key.uri, context);
-        }
-
-        if (cachedStream != null) {
+        ByteBuffer cachedImage = ImageResponseCache.getCachedImageBuffer(fetch.uri, context);
+        if (cachedImage != null) {
             // We were able to find a cached image.
-            Bitmap bitmap = BitmapFactory.decodeStream(cachedStream);
-            Utility.closeQuietly(cachedStream);
-            issueResponse(key, null, bitmap, isCachedRedirect);
+            issueResponse(fetch, null, cachedImage, isCachedRedirect);
         } else {
-            // Once the old downloader context is removed, we are thread-safe since this is the
-            // only reference to it
-            DownloaderContext downloaderContext = removePendingRequest(key);
-            if (downloaderContext != null && !downloaderContext.isCancelled) {
-                enqueueDownload(downloaderContext.request, key);
+            synchronized (pendingRequests) {
+                if (!fetch.isCancelled) {
+                    enqueueDownload(fetch);
+                }
             }
         }
     }
 
-    private static void download(RequestKey key, Context context) {
+    private static void download(Fetch fetch) {
+        Context context = fetch.context;
         HttpURLConnection connection = null;
         InputStream stream = null;
         Exception error = null;
-        Bitmap bitmap = null;
+        ByteBuffer image = null;
         boolean issueResponse = true;
 
         try {
-            URL url = new URL(key.uri.toString());
-            connection = (HttpURLConnection) url.openConnection();
+            URL url = new URL(fetch.uri.toString());
+            connection = HttpConnections.open(url);
             connection.setInstanceFollowRedirects(false);
+            fetch.connection = connection;
+            if (fetch.isCancelled) {
+                return;
+            }
 
-            switch (connection.getResponseCode()) {
+            int responseCode = HttpConnections.getResponseCode(connection);
+            switch (responseCode) {
                 case HttpURLConnection.HTTP_MOVED_PERM:
                 case HttpURLConnection.HTTP_MOVED_TEMP:
                     // redirect. So we need to perform further requests
@@ -225,28 +314,22 @@ public class ImageDownloader {
                     String redirectLocation = connection.getHeaderField("location");
                     if (!Utility.isNullOrEmpty(redirectLocation)) {
                         URI redirectUri = new URI(redirectLocation);
-                        UrlRedirectCache.cacheUriRedirect(context, key.uri, redirectUri);
-
-                        // Once the old downloader context is removed, we are thread-safe since this is the
-                        // only reference to it
-                        DownloaderContext downloaderContext = removePendingRequest(key);
-                        if (downloaderContext != null && !downloaderContext.isCancelled) {
-                            enqueueCacheRead(
-                                    downloaderContext.request,
-                                    new RequestKey(redirectUri, key.tag),
-                                    false);
-                        }
+                        UrlRedirectCache.cacheUriRedirect(context, fetch.uri, redirectUri);
+                        followRedirect(fetch, redirectUri);
                     }
                     break;
 
                 case HttpURLConnection.HTTP_OK:
                     // image should be available
-                    stream = ImageResponseCache.interceptAndCacheImageStream(context, connection);
-                    bitmap = BitmapFactory.decodeStream(stream);
+                    stream = HttpConnections.track(connection,
+                            ImageResponseCache.interceptAndCacheImageStream(context, connection));
+                    // Keep the (compressed) bytes, the waiters may want several sizes and subsampling needs
+                    // two passes over the data.
+                    image = readFully(stream, connection.getContentLength());
                     break;
 
                 default:
-                    stream = connection.getErrorStream();
+                    stream = HttpConnections.track(connection, connection.getErrorStream());
                     StringBuilder errorMessageBuilder = new StringBuilder();
                     if (stream != null) {
                         InputStreamReader reader = new InputStreamReader(stream);
@@ -268,13 +351,64 @@ public class ImageDownloader {
         } catch (URISyntaxException e) {
             error = e;
         } finally {
-            Utility.closeQuietly(stream);
-            Utility.disconnectQuietly(connection);
+            fetch.connection = null;
+            if (connection != null) {
+                // drains what the decoder left, so the connection can be reused for the next image of the host
+                HttpConnections.release(connection, stream);
+            }
         }
 
         if (issueResponse) {
-            issueResponse(key, error, bitmap, false);
+            issueResponse(fetch, error, image, false);
+        }
+    }
+
+    // Continues the fetch with the redirect target, or hands its waiters over to a fetch that is already loading it.
+    private static void followRedirect(Fetch fetch, URI redirectUri) {
+        synchronized (pendingRequests) {
+            if (!fetch.isCancelled && !rekeyFetch(fetch, redirectUri)) {
+                enqueueCacheRead(fetch, false);
+            }
+        }
+    }
+
+    // Re-keys the fetch to the given uri.  If another fetch is already working on that uri, hands the waiters over to
+    // it instead and returns true; the fetch is cancelled then.  Must be called with the pendingRequests lock held.
+    private static boolean rekeyFetch(Fetch fetch, URI uri) {
+        unregisterFetch(fetch);
+
+        Fetch existing = inFlightFetches.get(uri.toString());
+        if (existing != null) {
+            for (RequestKey key : fetch.waiters) {
+                DownloaderContext downloaderContext = pendingRequests.get(key);
+                if (downloaderContext != null) {
+                    downloaderContext.fetch = existing;
+                    existing.waiters.add(key);
+                }
+            }
+            if (fetch.priority == WorkQueue.Priority.VISIBLE && existing.priority != WorkQueue.Priority.VISIBLE) {
+                existing.priority = WorkQueue.Priority.VISIBLE;
+                existing.workItem.setPriority(existing.priority, true);
+            }
+            fetch.waiters.clear();
+            fetch.isCancelled = true;
+            return true;
+        }
+
+        fetch.uri = uri;
+        inFlightFetches.put(fetch.getKey(), fetch);
+        return false;
+    }
+
+    private static ByteBuffer readFully(InputStream stream, int contentLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                contentLength > 0 ? contentLength : Utility.DEFAULT_STREAM_BUFFER_SIZE);
+        byte[] buffer = new byte[Utility.DEFAULT_STREAM_BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = stream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, bytesRead);
         }
+        return ByteBuffer.wrap(bytes.toByteArray());
     }
 
     private static synchronized Handler getHandler() {
@@ -284,12 +418,6 @@ public class ImageDownloader {
         return handler;
     }
 
-    private static DownloaderContext removePendingRequest(RequestKey key) {
-        synchronized (pendingRequests) {
-            return pendingRequests.remove(key);
-        }
-    }
-
     private static class RequestKey {
         private static final int HASH_SEED = 29; // Some random prime number
         private static final int HASH_MULTIPLIER = 37; // Some random prime number
@@ -326,40 +454,60 @@ public class ImageDownloader {
     }
 
     private static class DownloaderContext {
-        WorkQueue.WorkItem workItem;
+        Fetch fetch;
         ImageRequest request;
-        boolean isCancelled;
+    }
+
+    // The shared work for one image.  Fields are guarded by the pendingRequests lock, except connection, which is
+    // only set by the thread downloading.
+    private static class Fetch {
+        final Context context;
+        final List<RequestKey> waiters = new ArrayList<RequestKey>();
+        URI uri;
+        WorkQueue.WorkItem workItem;
+        WorkQueue.Priority priority = WorkQueue.Priority.VISIBLE;
+        volatile boolean isCancelled;
+        volatile HttpURLConnection connection;
+
+        Fetch(Context context, URI uri) {
+            this.context = context;
+            this.uri = uri;
+        }
+
+        String getKey() {
+            return uri.toString();
+        }
     }
 
     private static class CacheReadWorkItem implements Runnable {
-        private Context context;
-        private RequestKey key;
+        private Fetch fetch;
         private boolean allowCachedRedirects;
 
-        CacheReadWorkItem(Context context, RequestKey key, boolean allowCachedRedirects) {
-            this.context = context;
-            this.key = key;
+        CacheReadWorkItem(Fetch fetch, boolean allowCachedRedirects) {
+            this.fetch = fetch;
             this.allowCachedRedirects = allowCachedRedirects;
         }
 
         @Override
         public void run() {
-            readFromCache(key, context, allowCachedRedirects);
+            if (!fetch.isCancelled) {
+                readFromCache(fetch, allowCachedRedirects);
+            }
         }
     }
 
     private static class DownloadImageWorkItem implements Runnable {
-        private Context context;
-        private RequestKey key;
+        private Fetch fetch;
 
-        DownloadImageWorkItem(Context context, RequestKey key) {
-            this.context = context;
-            this.key = key;
+        DownloadImageWorkItem(Fetch fetch) {
+            this.fetch = fetch;
         }
 
         @Override
         public void run() {
-            download(key, context);
+            if (!fetch.isCancelled) {
+                download(fetch);
+            }
         }
 
     }
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import java.net.URI;
+
+/**
+ * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
+ * any of the classes in this package is unsupported, and they may be modified or removed without warning at
+ * any time.
+ *
+ * Process wide cache of decoded images, consulted before the images are read from the disk cache.  The cache
+ * is bounded by the number of bytes held by the Bitmaps and gives memory back when the system asks for it.
+ */
+public class ImageMemoryCache {
+    // Fraction of the heap the cache may use.
+    private static final int HEAP_FRACTION = 8;
+
+    private static ImageMemoryCache instance;
+
+    private final LruCache<String, Bitmap> cache;
+
+    private ImageMemoryCache(Context context, int maxSizeInBytes) {
+        cache = new LruCache<String, Bitmap>(maxSizeInBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                // getByteCount is not available before API 12
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+
+        // ComponentCallbacks2 was added in API 14, older devices only get onLowMemory through the activities.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            context.registerComponentCallbacks(new TrimCallbacks(this));
+        }
+    }
+
+    public static synchronized ImageMemoryCache getInstance(Context context) {
+        if (instance == null) {
+            int maxSizeInBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+            instance = new ImageMemoryCache(context.getApplicationContext(), maxSizeInBytes);
+        }
+        return instance;
+    }
+
+    /**
+     * Images decoded for different target sizes are cached separately, see ImageRequest.Builder.setTargetSize.
+     */
+    public Bitmap get(URI uri, int targetWidth, int targetHeight) {
+        return (uri != null) ? cache.get(getKey(uri, targetWidth, targetHeight)) : null;
+    }
+
+    public void put(URI uri, int targetWidth, int targetHeight, Bitmap bitmap) {
+        if (uri != null && bitmap != null) {
+            cache.put(getKey(uri, targetWidth, targetHeight), bitmap);
+        }
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * Frees memory according to one of the ComponentCallbacks2.TRIM_MEMORY_* levels.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // We are likely to be killed next, keep nothing.
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.trimToSize(cache.maxSize() / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    public int getSizeInBytes() {
+        return cache.size();
+    }
+
+    public int getMaxSizeInBytes() {
+        return cache.maxSize();
+    }
+
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    public int getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    static String getKey(URI uri, int targetWidth, int targetHeight) {
+        if (targetWidth <= ImageRequest.UNSPECIFIED_DIMENSION && targetHeight <= ImageRequest.UNSPECIFIED_DIMENSION) {
+            return uri.toString();
+        }
+        return uri.toString() + "#" + targetWidth + "x" + targetHeight;
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+
+    // Kept in its own class so it is only loaded on devices that know ComponentCallbacks2.
+    private static class TrimCallbacks implements ComponentCallbacks2 {
+        private final ImageMemoryCache memoryCache;
+
+        TrimCallbacks(ImageMemoryCache memoryCache) {
+            this.memoryCache = memoryCache;
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            memoryCache.trimMemory(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            memoryCache.clear();
+        }
+    }
+}
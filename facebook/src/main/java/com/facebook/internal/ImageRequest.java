@@ -47,6 +47,9 @@ public class ImageRequest {
     private Callback callback;
     private boolean allowCachedRedirects;
     private Object callerTag;
+    private int targetWidth;
+    private int targetHeight;
+    private boolean prefetch;
 
     public static URI getProfilePictureUrl(
             String userId,
@@ -84,6 +87,9 @@ public class ImageRequest {
         this.callback = builder.callback;
         this.allowCachedRedirects = builder.allowCachedRedirects;
         this.callerTag = builder.callerTag == null ? new Object() : builder.callerTag;
+        this.targetWidth = builder.targetWidth;
+        this.targetHeight = builder.targetHeight;
+        this.prefetch = builder.prefetch;
     }
 
     public Context getContext() {
@@ -106,6 +112,18 @@ public class ImageRequest {
         return callerTag;
     }
 
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
     public static class Builder {
         // Required
         private Context context;
@@ -115,6 +133,9 @@ public class ImageRequest {
         private Callback callback;
         private boolean allowCachedRedirects;
         private Object callerTag;
+        private int targetWidth = UNSPECIFIED_DIMENSION;
+        private int targetHeight = UNSPECIFIED_DIMENSION;
+        private boolean prefetch;
 
         public Builder(Context context, URI imageUrl) {
             Validate.notNull(imageUrl, "imageUrl");
@@ -137,6 +158,26 @@ public class ImageRequest {
             return this;
         }
 
+        /**
+         * Sets the size in pixels the image will be displayed at. The downloader then decodes a subsampled image
+         * that is at least this big instead of the full resolution one. Either dimension may be
+         * UNSPECIFIED_DIMENSION.
+         */
+        public Builder setTargetSize(int targetWidth, int targetHeight) {
+            this.targetWidth = Math.max(targetWidth, UNSPECIFIED_DIMENSION);
+            this.targetHeight = Math.max(targetHeight, UNSPECIFIED_DIMENSION);
+            return this;
+        }
+
+        /**
+         * Marks an image that isn't shown yet but likely will be soon. The downloader only gives such requests part
+         * of its connections, so they never hold up images that are shown.
+         */
+        public Builder setPrefetch(boolean prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
         public ImageRequest build() {
             return new ImageRequest(this);
         }
@@ -17,12 +17,15 @@
 package com.facebook.internal;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.util.Log;
 import com.facebook.LoggingBehavior;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -40,22 +43,58 @@ class ImageResponseCache {
         return imageCache;
     }
 
-    // Get stream from cache, or return null if the image is not cached.
+    // Get the cached image data, or return null if the image is not cached.
     // Does not throw if there was an error.
-    static InputStream getCachedImageStream(URI url, Context context) {
-        InputStream imageStream = null;
+    static ByteBuffer getCachedImageBuffer(URI url, Context context) {
+        ByteBuffer imageBuffer = null;
         if (url != null) {
             if (isCDNURL(url)) {
                 try {
                     FileLruCache cache = getCache(context);
-                    imageStream = cache.get(url.toString());
+                    imageBuffer = cache.getBuffer(url.toString());
                 } catch (IOException e) {
                     Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, e.toString());
                 }
             }
         }
 
-        return imageStream;
+        return imageBuffer;
+    }
+
+    // Decodes a buffer returned by getCachedImageBuffer without copying it into another stream buffer first.
+    // If a target size is given, the image is subsampled to the smallest power of two scale that still covers it.
+    static Bitmap decodeImage(ByteBuffer imageBuffer, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (targetWidth > ImageRequest.UNSPECIFIED_DIMENSION || targetHeight > ImageRequest.UNSPECIFIED_DIMENSION) {
+            // Read just the header first, so we know how much detail we can throw away.
+            options.inJustDecodeBounds = true;
+            decode(imageBuffer.duplicate(), options);
+            options.inSampleSize = computeSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+            options.inJustDecodeBounds = false;
+        }
+        return decode(imageBuffer, options);
+    }
+
+    static int computeSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (width <= 0 || height <= 0) {
+            return sampleSize;
+        }
+
+        // An unspecified dimension never limits the scale.
+        while ((targetWidth <= ImageRequest.UNSPECIFIED_DIMENSION || width / (sampleSize * 2) >= targetWidth)
+                && (targetHeight <= ImageRequest.UNSPECIFIED_DIMENSION || height / (sampleSize * 2) >= targetHeight)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap decode(ByteBuffer imageBuffer, BitmapFactory.Options options) {
+        if (imageBuffer.hasArray()) {
+            return BitmapFactory.decodeByteArray(imageBuffer.array(),
+                    imageBuffer.arrayOffset() + imageBuffer.position(), imageBuffer.remaining(), options);
+        }
+        return BitmapFactory.decodeStream(new ByteBufferInputStream(imageBuffer), null, options);
     }
 
     static InputStream interceptAndCacheImageStream(Context context, HttpURLConnection connection) throws IOException {
@@ -105,6 +144,41 @@ class ImageResponseCache {
         }
     }
 
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long byteCount) {
+            int count = (int) Math.min(byteCount, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+    }
+
     private static class BufferedHttpInputStream extends BufferedInputStream {
         HttpURLConnection connection;
         BufferedHttpInputStream(InputStream stream, HttpURLConnection connection) {
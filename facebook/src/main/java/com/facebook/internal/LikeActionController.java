@@ -87,8 +87,9 @@ public class LikeActionController {
     private static FileLruCache controllerDiskCache;
     private static final ConcurrentHashMap<String, LikeActionController> cache =
             new ConcurrentHashMap<String, LikeActionController>();
-    private static WorkQueue mruCacheWorkQueue = new WorkQueue(1); // This MUST be 1 for proper synchronization
-    private static WorkQueue diskIOWorkQueue = new WorkQueue(1); // This MUST be 1 for proper synchronization
+    // The concurrency of both queues MUST be 1 for proper synchronization
+    private static WorkQueue mruCacheWorkQueue = new WorkQueue(1, "LikeActionController.mruCache");
+    private static WorkQueue diskIOWorkQueue = new WorkQueue(1, "LikeActionController.diskIO");
     private static Handler handler;
     private static String objectIdForPendingController;
     private static boolean isPendingBroadcastReset;
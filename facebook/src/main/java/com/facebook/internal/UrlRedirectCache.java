@@ -21,11 +21,10 @@ import android.util.Log;
 import com.facebook.LoggingBehavior;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 
 class UrlRedirectCache {
     static final String TAG = UrlRedirectCache.class.getSimpleName();
@@ -46,26 +45,15 @@ class UrlRedirectCache {
         }
 
         String uriString = uri.toString();
-        InputStreamReader reader = null;
         try {
-            InputStream stream;
+            ByteBuffer buffer;
             FileLruCache cache = getCache(context);
             boolean redirectExists = false;
-            while ((stream = cache.get(uriString, REDIRECT_CONTENT_TAG)) != null) {
+            while ((buffer = cache.getBuffer(uriString, REDIRECT_CONTENT_TAG)) != null) {
                 redirectExists = true;
 
-                // Get the redirected url
-                reader = new InputStreamReader(stream);
-                char[] buffer = new char[128];
-                int bufferLength;
-                StringBuilder urlBuilder = new StringBuilder();
-                while ((bufferLength = reader.read(buffer, 0, buffer.length)) > 0) {
-                    urlBuilder.append(buffer, 0, bufferLength);
-                }
-                Utility.closeQuietly(reader);
-
                 // Iterate to the next url in the redirection
-                uriString = urlBuilder.toString();
+                uriString = Utility.readBufferToString(buffer);
             }
 
             if (redirectExists) {
@@ -74,8 +62,6 @@ class UrlRedirectCache {
         } catch (URISyntaxException e) {
             // caching is best effort, so ignore the exception
         } catch (IOException ioe) {
-        } finally {
-            Utility.closeQuietly(reader);
         }
 
         return null;
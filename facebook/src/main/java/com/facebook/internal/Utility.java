@@ -44,6 +44,8 @@ import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
 import java.net.URLConnection;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
@@ -532,6 +534,11 @@ public final class Utility {
         }
     }
 
+    public static String readBufferToString(ByteBuffer buffer) {
+        // Same charset InputStreamReader uses by default on Android.
+        return Charset.forName("UTF-8").decode(buffer).toString();
+    }
+
     public static boolean stringsEqualOrEmpty(String a, String b) {
         boolean aEmpty = TextUtils.isEmpty(a);
         boolean bEmpty = TextUtils.isEmpty(b);
@@ -16,22 +16,70 @@
 
 package com.facebook.internal;
 
+import android.os.Handler;
+import android.os.Looper;
+import com.facebook.LoggingBehavior;
 import com.facebook.Settings;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
-
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Work items are kept in one pending list per priority lane.  Higher lanes are always started first, and every
+// lane has its own limit of concurrently running items on top of the queue wide maxConcurrent.
+//
+// Submitting and finishing an item never blocks: both just publish the node to a concurrent queue.  Whichever
+// thread finds no other thread scheduling becomes the scheduler, moves the published nodes into their lanes and
+// starts as many items as the limits allow.  Only the scheduler, cancel() and reprioritization take workLock, and
+// all of them just do O(1) list operations while holding it.
 class WorkQueue {
     public static final int DEFAULT_MAX_CONCURRENT = 8;
 
+    enum Priority {
+        // Work the user is waiting for, e.g. images of visible rows
+        VISIBLE,
+        // Work that is likely needed soon, e.g. images of rows next to the visible ones
+        PREFETCH,
+        // Everything else
+        BACKGROUND
+    }
+
+    private static final int LANE_COUNT = Priority.values().length;
+    private static final String TAG = WorkQueue.class.getSimpleName();
+    // Named queues log their metrics every this many finished items
+    private static final int METRICS_LOG_INTERVAL = 100;
+    // Items the executor rejected while nothing of the queue was running are offered again after this delay
+    private static final long REJECTED_RETRY_MILLIS = 100;
+
     private final Object workLock = new Object();
-    private WorkNode pendingJobs;
+    private final WorkNode[] pendingJobs = new WorkNode[LANE_COUNT];
+    private final int[] laneRunningCount = new int[LANE_COUNT];
+    private final int[] laneMaxConcurrent = new int[LANE_COUNT];
 
     private final int maxConcurrent;
     private final Executor executor;
+    private final String name;
 
-    private WorkNode runningJobs = null;
     private int runningCount = 0;
 
+    private final ConcurrentLinkedQueue<WorkNode> submittedJobs = new ConcurrentLinkedQueue<WorkNode>();
+    private final ConcurrentLinkedQueue<WorkNode> finishedJobs = new ConcurrentLinkedQueue<WorkNode>();
+    private final AtomicInteger scheduleRequests = new AtomicInteger();
+    private final AtomicBoolean retryPosted = new AtomicBoolean();
+    private Handler retryHandler;
+
+    // Metrics
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong finishedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+
     WorkQueue() {
         this(DEFAULT_MAX_CONCURRENT);
     }
@@ -41,8 +89,33 @@ class WorkQueue {
     }
 
     WorkQueue(int maxConcurrent, Executor executor) {
+        this(maxConcurrent, executor, null);
+    }
+
+    // A named queue logs its metrics under LoggingBehavior.REQUESTS
+    WorkQueue(int maxConcurrent, String name) {
+        this(maxConcurrent, Settings.getExecutor(), name);
+    }
+
+    WorkQueue(int maxConcurrent, Executor executor, String name) {
         this.maxConcurrent = maxConcurrent;
         this.executor = executor;
+        this.name = name;
+
+        // Lower lanes may never take all slots, so visible work can always start soon.
+        laneMaxConcurrent[Priority.VISIBLE.ordinal()] = maxConcurrent;
+        laneMaxConcurrent[Priority.PREFETCH.ordinal()] = Math.max(1, maxConcurrent / 2);
+        laneMaxConcurrent[Priority.BACKGROUND.ordinal()] = Math.max(1, maxConcurrent / 4);
+    }
+
+    void setMaxConcurrent(Priority priority, int laneMaxConcurrent) {
+        if (laneMaxConcurrent < 1) {
+            throw new IllegalArgumentException("laneMaxConcurrent must be >= 1");
+        }
+        synchronized (workLock) {
+            this.laneMaxConcurrent[priority.ordinal()] = laneMaxConcurrent;
+        }
+        schedule();
     }
 
     WorkItem addActiveWorkItem(Runnable callback) {
@@ -50,114 +123,261 @@ class WorkQueue {
     }
 
     WorkItem addActiveWorkItem(Runnable callback, boolean addToFront) {
-        WorkNode node = new WorkNode(callback);
-        synchronized (workLock) {
-            pendingJobs = node.addToList(pendingJobs, addToFront);
-        }
+        return addActiveWorkItem(callback, addToFront, Priority.VISIBLE);
+    }
+
+    WorkItem addActiveWorkItem(Runnable callback, boolean addToFront, Priority priority) {
+        WorkNode node = new WorkNode(callback, priority, addToFront);
+        pendingCount.incrementAndGet();
+        submittedJobs.offer(node);
 
-        startItem();
+        schedule();
         return node;
     }
 
+    // Number of items waiting to be started
+    int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    long getFinishedCount() {
+        return finishedCount.get();
+    }
+
+    // Average time items waited before they were started, in milliseconds
+    long getAverageWaitMillis() {
+        long count = startedCount.get();
+        return count == 0 ? 0 : (totalWaitNanos.get() / count) / 1000000;
+    }
+
+    // Average time items ran, in milliseconds
+    long getAverageRunMillis() {
+        long count = finishedCount.get();
+        return count == 0 ? 0 : (totalRunNanos.get() / count) / 1000000;
+    }
+
+    private void logMetrics() {
+        Logger.log(LoggingBehavior.REQUESTS, TAG, "%s: pending: %d, finished: %d, average wait: %dms, average run: %dms",
+                name, getPendingCount(), getFinishedCount(), getAverageWaitMillis(), getAverageRunMillis());
+    }
+
     void validate() {
         synchronized (workLock) {
-            // Verify that all running items know they are running, and counts match
+            // Verify that the lane counts match the total
             int count = 0;
-
-            if (runningJobs != null) {
-                WorkNode walk = runningJobs;
-                do {
-                    walk.verify(true);
-                    count++;
-                    walk = walk.getNext();
-                } while (walk != runningJobs);
+            for (int lane = 0; lane < LANE_COUNT; lane++) {
+                assert laneRunningCount[lane] <= laneMaxConcurrent[lane];
+                count += laneRunningCount[lane];
+
+                if (pendingJobs[lane] != null) {
+                    WorkNode walk = pendingJobs[lane];
+                    do {
+                        walk.verify(lane);
+                        walk = walk.getNext();
+                    } while (walk != pendingJobs[lane]);
+                }
             }
 
             assert runningCount == count;
         }
     }
 
-    private void startItem() {
-        finishItemAndStartNew(null);
-    }
+    private void schedule() {
+        // Only one thread schedules at a time.  Requests arriving meanwhile are picked up by that thread.
+        if (scheduleRequests.getAndIncrement() != 0) {
+            return;
+        }
 
-    private void finishItemAndStartNew(WorkNode finished) {
-        WorkNode ready = null;
+        int missed = 1;
+        try {
+            do {
+                List<WorkNode> ready = null;
+
+                synchronized (workLock) {
+                    WorkNode node;
+                    while ((node = finishedJobs.poll()) != null) {
+                        laneRunningCount[node.lane]--;
+                        runningCount--;
+                    }
+                    while ((node = submittedJobs.poll()) != null) {
+                        if (node.state == WorkNode.STATE_SUBMITTED) {
+                            node.addToLane();
+                        }
+                    }
+
+                    for (int lane = 0; (lane < LANE_COUNT) && (runningCount < maxConcurrent); lane++) {
+                        while ((pendingJobs[lane] != null) && (runningCount < maxConcurrent)
+                                && (laneRunningCount[lane] < laneMaxConcurrent[lane])) {
+                            node = pendingJobs[lane]; // Head of the lane
+                            pendingJobs[lane] = node.removeFromList(pendingJobs[lane]);
+                            node.state = WorkNode.STATE_RUNNING;
+                            laneRunningCount[lane]++;
+                            runningCount++;
+
+                            if (ready == null) {
+                                ready = new ArrayList<WorkNode>();
+                            }
+                            ready.add(node);
+                        }
+                    }
+                }
 
-        synchronized (workLock) {
-            if (finished != null) {
-                runningJobs = finished.removeFromList(runningJobs);
-                runningCount--;
+                if (ready != null) {
+                    dispatch(ready);
+                }
+
+            } while ((missed = scheduleRequests.addAndGet(-missed)) != 0);
+        } finally {
+            // Only non-zero if the loop was left by an exception, later calls must still be able to schedule.
+            if (missed != 0) {
+                scheduleRequests.addAndGet(-missed);
             }
+        }
+    }
 
-            if (runningCount < maxConcurrent) {
-                ready = pendingJobs; // Head of the pendingJobs queue
-                if (ready != null) {
-                    // The Queue reassignments are necessary since 'ready' might have been
-                    // added / removed from the front of either queue, which changes its
-                    // respective head.
-                    pendingJobs = ready.removeFromList(pendingJobs);
-                    runningJobs = ready.addToList(runningJobs, false);
-                    runningCount++;
-
-                    ready.setIsRunning(true);
+    private void dispatch(List<WorkNode> ready) {
+        for (int i = 0; i < ready.size(); i++) {
+            if (!execute(ready.get(i))) {
+                // The executor is full.  Whatever is left waits for the next schedule(), which the next submission
+                // or finished item triggers.  If none of the items of this queue is running, nothing may ever
+                // trigger it, so retry after a delay.
+                if (requeue(ready.subList(i, ready.size()))) {
+                    retryLater();
                 }
+                return;
             }
         }
+    }
 
-        if (ready != null) {
-            execute(ready);
+    // Puts nodes the executor rejected back at the front of their lanes, in their original order.  Returns true if
+    // no item of the queue is running afterwards.
+    private boolean requeue(List<WorkNode> nodes) {
+        synchronized (workLock) {
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                WorkNode node = nodes.get(i);
+                laneRunningCount[node.lane]--;
+                runningCount--;
+                pendingJobs[node.lane] = node.addToList(pendingJobs[node.lane], true);
+                node.state = WorkNode.STATE_PENDING;
+            }
+            return runningCount == 0;
         }
     }
 
-    private void execute(final WorkNode node) {
-        executor.execute(new Runnable() {
+    private void retryLater() {
+        if (!retryPosted.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (workLock) {
+            if (retryHandler == null) {
+                retryHandler = new Handler(Looper.getMainLooper());
+            }
+        }
+        retryHandler.postDelayed(new Runnable() {
             @Override
             public void run() {
-                try {
-                    node.getCallback().run();
-                } finally {
-                    finishItemAndStartNew(node);
-                }
+                retryPosted.set(false);
+                schedule();
             }
-        });
+        }, REJECTED_RETRY_MILLIS);
+    }
+
+    // Returns false if the executor rejected the node.
+    private boolean execute(final WorkNode node) {
+        final long startTime = System.nanoTime();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long runStartTime = System.nanoTime();
+                    try {
+                        node.getCallback().run();
+                    } finally {
+                        totalRunNanos.addAndGet(System.nanoTime() - runStartTime);
+                        if ((finishedCount.incrementAndGet() % METRICS_LOG_INTERVAL == 0) && (name != null)) {
+                            logMetrics();
+                        }
+                        finishedJobs.offer(node);
+                        schedule();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+
+        pendingCount.decrementAndGet();
+        startedCount.incrementAndGet();
+        totalWaitNanos.addAndGet(startTime - node.submitTime);
+        return true;
     }
 
     private class WorkNode implements WorkItem {
+        // Published to submittedJobs, not yet in a lane
+        static final int STATE_SUBMITTED = 0;
+        // Waiting in pendingJobs[lane]
+        static final int STATE_PENDING = 1;
+        static final int STATE_CANCELLED = 2;
+        static final int STATE_RUNNING = 3;
+
         private final Runnable callback;
+        private final long submitTime;
         private WorkNode next;
         private WorkNode prev;
-        private boolean isRunning;
+        // The fields below are guarded by workLock, state is also read without it.
+        private volatile int state = STATE_SUBMITTED;
+        private int lane;
+        private boolean addToFront;
 
-        WorkNode(Runnable callback) {
+        WorkNode(Runnable callback, Priority priority, boolean addToFront) {
             this.callback = callback;
+            this.lane = priority.ordinal();
+            this.addToFront = addToFront;
+            this.submitTime = System.nanoTime();
         }
 
         @Override
         public boolean cancel() {
             synchronized (workLock) {
-                if (!isRunning()) {
-                    pendingJobs = removeFromList(pendingJobs);
-                    return true;
+                if (state == STATE_PENDING) {
+                    pendingJobs[lane] = removeFromList(pendingJobs[lane]);
+                } else if (state != STATE_SUBMITTED) {
+                    return state == STATE_CANCELLED;
                 }
+                // A submitted node is dropped once the scheduler sees it.
+                state = STATE_CANCELLED;
             }
 
-            return false;
+            pendingCount.decrementAndGet();
+            return true;
         }
 
         @Override
         public void moveToFront() {
+            setPriority(Priority.VISIBLE, true);
+        }
+
+        @Override
+        public void setPriority(Priority priority, boolean toFront) {
             synchronized (workLock) {
-                if (!isRunning()) {
-                    pendingJobs = removeFromList(pendingJobs);
-                    pendingJobs = addToList(pendingJobs, true);
+                if (state == STATE_PENDING) {
+                    pendingJobs[lane] = removeFromList(pendingJobs[lane]);
+                    lane = priority.ordinal();
+                    addToFront = toFront;
+                    addToLane();
+                } else if (state == STATE_SUBMITTED) {
+                    // Applied when the scheduler adds the node to its lane.
+                    lane = priority.ordinal();
+                    addToFront = toFront;
                 }
             }
+
+            schedule();
         }
 
         @Override
         public boolean isRunning() {
-            return isRunning;
+            return state == STATE_RUNNING;
         }
 
         Runnable getCallback() {
@@ -168,8 +388,10 @@ class WorkQueue {
             return next;
         }
 
-        void setIsRunning(boolean isRunning) {
-            this.isRunning = isRunning;
+        // Must be called with workLock held.
+        void addToLane() {
+            pendingJobs[lane] = addToList(pendingJobs[lane], addToFront);
+            state = STATE_PENDING;
         }
 
         WorkNode addToList(WorkNode list, boolean addToFront) {
@@ -206,10 +428,11 @@ class WorkQueue {
             return list;
         }
 
-        void verify(boolean shouldBeRunning) {
+        void verify(int expectedLane) {
             assert prev.next == this;
             assert next.prev == this;
-            assert isRunning() == shouldBeRunning;
+            assert state == STATE_PENDING;
+            assert lane == expectedLane;
         }
     }
 
@@ -217,5 +440,6 @@ class WorkQueue {
         boolean cancel();
         boolean isRunning();
         void moveToFront();
+        void setPriority(Priority priority, boolean toFront);
     }
 }
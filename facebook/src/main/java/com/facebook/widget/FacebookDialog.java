@@ -569,6 +569,10 @@ public class FacebookDialog {
      * Provides a base class for various FacebookDialog builders. This is public primarily to allow its use elsewhere
      * in the Android SDK; developers are discouraged from constructing their own FacebookDialog builders as the
      * internal API may change.
+     * <p/>
+     * Attachment files may be hard linked instead of copied to be served to the Facebook application, see
+     * {@link NativeAppCallAttachmentStore#addAttachmentFilesForCall}. They must not be modified in place until the
+     * dialog finished.
      *
      * @param <CONCRETE> The concrete base class of the builder.
      */
@@ -26,6 +26,7 @@ import android.widget.*;
 import com.facebook.FacebookException;
 import com.facebook.android.R;
 import com.facebook.internal.ImageDownloader;
+import com.facebook.internal.ImageMemoryCache;
 import com.facebook.internal.ImageRequest;
 import com.facebook.internal.ImageResponse;
 import com.facebook.model.GraphObject;
@@ -61,7 +62,6 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
     private DataNeededListener dataNeededListener;
     private GraphObjectCursor<T> cursor;
     private Context context;
-    private Map<String, ImageResponse> prefetchedPictureCache = new HashMap<String, ImageResponse>();
     private ArrayList<String> prefetchedProfilePictureIds = new ArrayList<String>();
     private OnErrorListener onErrorListener;
 
@@ -230,6 +230,9 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
             // it to the end of the list regardless.
             boolean alreadyPrefetching = prefetchedProfilePictureIds.remove(id);
             prefetchedProfilePictureIds.add(id);
+            if (prefetchedProfilePictureIds.size() > MAX_PREFETCHED_PICTURES) {
+                prefetchedProfilePictureIds.remove(0);
+            }
 
             // If we've already requested it for pre-fetching, no need to do so again.
             if (!alreadyPrefetching) {
@@ -380,11 +383,12 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
             if (pictureURI != null) {
                 ImageView profilePic = (ImageView) view.findViewById(R.id.com_facebook_picker_image);
 
-                // See if we have already pre-fetched this; if not, download it.
-                if (prefetchedPictureCache.containsKey(id)) {
-                    ImageResponse response = prefetchedPictureCache.get(id);
-                    profilePic.setImageBitmap(response.getBitmap());
-                    profilePic.setTag(response.getRequest().getImageUri());
+                // See if we have already shown or pre-fetched this; if not, download it.
+                int pictureSize = getPictureSize();
+                Bitmap cachedBitmap = ImageMemoryCache.getInstance(context).get(pictureURI, pictureSize, pictureSize);
+                if (cachedBitmap != null) {
+                    profilePic.setImageBitmap(cachedBitmap);
+                    profilePic.setTag(pictureURI);
                 } else {
                     downloadProfilePicture(id, pictureURI, profilePic);
                 }
@@ -747,7 +751,10 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
                 imageView.setImageResource(getDefaultPicture());
             }
 
+            int pictureSize = getPictureSize();
             ImageRequest.Builder builder = new ImageRequest.Builder(context.getApplicationContext(), pictureURI)
+                    .setTargetSize(pictureSize, pictureSize)
+                    .setPrefetch(prefetching)
                     .setCallerTag(this)
                     .setCallback(
                             new ImageRequest.Callback() {
@@ -764,6 +771,10 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
         }
     }
 
+    private int getPictureSize() {
+        return context.getResources().getDimensionPixelSize(R.dimen.com_facebook_picker_image_size);
+    }
+
     private void callOnErrorListener(Exception exception) {
         if (onErrorListener != null) {
             if (!(exception instanceof FacebookException)) {
@@ -779,18 +790,8 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
             callOnErrorListener(response.getError());
         }
 
-        if (imageView == null) {
-            // This was a pre-fetch request.
-            if (response.getBitmap() != null) {
-                // Is the cache too big?
-                if (prefetchedPictureCache.size() >= MAX_PREFETCHED_PICTURES) {
-                    // Find the oldest one and remove it.
-                    String oldestId = prefetchedProfilePictureIds.remove(0);
-                    prefetchedPictureCache.remove(oldestId);
-                }
-                prefetchedPictureCache.put(graphObjectId, response);
-            }
-        } else if (graphObjectId.equals(imageView.getTag())) {
+        // Pre-fetch requests have no imageView, the ImageDownloader already keeps their bitmap in the ImageMemoryCache.
+        if (imageView != null && graphObjectId.equals(imageView.getTag())) {
             Exception error = response.getError();
             Bitmap bitmap = response.getBitmap();
             if (error == null && bitmap != null) {
@@ -461,6 +461,7 @@ public class ProfilePictureView extends FrameLayout {
                     ImageRequest.getProfilePictureUrl(profileId, queryWidth, queryHeight));
 
             ImageRequest request = requestBuilder.setAllowCachedRedirects(allowCachedResponse)
+                    .setTargetSize(queryWidth, queryHeight)
                     .setCallerTag(this)
                     .setCallback(
                             new ImageRequest.Callback() {
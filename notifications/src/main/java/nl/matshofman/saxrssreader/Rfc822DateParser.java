@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2011 Mats Hofman <http://matshofman.nl/contact/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.matshofman.saxrssreader;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Parses RFC 822 dates as used in the pubDate of RSS items, e.g. "Tue, 10 Jun 2003 04:00:00 GMT".
+ * <p>
+ * The common forms are parsed by hand without any allocation. Everything else, like out of range
+ * fields, goes to a per thread SimpleDateFormat which keeps its lenient behavior for odd feeds.
+ */
+public final class Rfc822DateParser {
+
+	public static final long INVALID = Long.MIN_VALUE;
+
+	private static final String PATTERN = "EEE, dd MMM yyyy HH:mm:ss Z";
+	private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+	private static final ThreadLocal<SimpleDateFormat> FALLBACK = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(PATTERN, Locale.ENGLISH);
+		}
+	};
+
+	private Rfc822DateParser() {
+	}
+
+	/**
+	 * @return milliseconds since the epoch or {@link #INVALID} if the date can't be parsed at all
+	 */
+	public static long parse(String date) {
+		if (date == null)
+			return INVALID;
+		long millis = parseFast(date.trim());
+		if (millis != INVALID)
+			return millis;
+		try {
+			return FALLBACK.get().parse(date).getTime();
+		} catch (ParseException e) {
+			return INVALID;
+		}
+	}
+
+	// [EEE,] d MMM yy[yy] HH:mm[:ss] zone
+	private static long parseFast(String s) {
+		final int length = s.length();
+		int pos = 0;
+
+		// optional day of week
+		if (pos < length && Character.isLetter(s.charAt(pos))) {
+			while (pos < length && Character.isLetter(s.charAt(pos)))
+				pos++;
+			if (pos < length && s.charAt(pos) == ',')
+				pos++;
+		}
+		pos = skipSpaces(s, pos);
+
+		final int dayStart = pos;
+		final int day = (int) readNumber(s, pos, 2);
+		pos = skipDigits(s, pos);
+		if (pos == dayStart || pos - dayStart > 2 || day < 1 || day > 31)
+			return INVALID;
+		pos = skipSpaces(s, pos);
+
+		if (pos + 3 > length)
+			return INVALID;
+		final int month = parseMonth(s, pos);
+		if (month == 0)
+			return INVALID;
+		pos += 3;
+		pos = skipSpaces(s, pos);
+
+		final int yearStart = pos;
+		int year = (int) readNumber(s, pos, 4);
+		pos = skipDigits(s, pos);
+		if (pos - yearStart == 2)
+			year += year < 50 ? 2000 : 1900;
+		else if (pos - yearStart != 4)
+			return INVALID;
+		pos = skipSpaces(s, pos);
+
+		if (pos + 5 > length || s.charAt(pos + 2) != ':')
+			return INVALID;
+		final int hour = readTwoDigits(s, pos);
+		final int minute = readTwoDigits(s, pos + 3);
+		pos += 5;
+		int second = 0;
+		if (pos < length && s.charAt(pos) == ':') {
+			second = readTwoDigits(s, pos + 1);
+			pos += 3;
+		}
+		if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60)
+			return INVALID;
+		pos = skipSpaces(s, pos);
+
+		final long offsetMinutes = parseZone(s, pos);
+		if (offsetMinutes == INVALID || day > daysInMonth(year, month))
+			return INVALID;
+
+		final long days = daysFromCivil(year, month, day);
+		return ((days * 24 + hour) * 60 + minute - offsetMinutes) * 60000L + second * 1000L;
+	}
+
+	private static int parseMonth(String s, int pos) {
+		for (int i = 0; i < MONTHS.length(); i += 3) {
+			if (Character.toLowerCase(s.charAt(pos)) == MONTHS.charAt(i)
+					&& Character.toLowerCase(s.charAt(pos + 1)) == MONTHS.charAt(i + 1)
+					&& Character.toLowerCase(s.charAt(pos + 2)) == MONTHS.charAt(i + 2))
+				return i / 3 + 1;
+		}
+		return 0;
+	}
+
+	// offset to UTC in minutes
+	private static long parseZone(String s, int pos) {
+		final int length = s.length();
+		if (pos >= length)
+			return INVALID;
+		final char sign = s.charAt(pos);
+		if (sign == '+' || sign == '-') {
+			if (pos + 5 != length)
+				return INVALID;
+			final long hours = readTwoDigits(s, pos + 1);
+			final long minutes = readTwoDigits(s, pos + 3);
+			if (hours < 0 || minutes < 0)
+				return INVALID;
+			final long offset = hours * 60 + minutes;
+			return sign == '-' ? -offset : offset;
+		}
+		if (s.regionMatches(true, pos, "GMT", 0, 3) || s.regionMatches(true, pos, "UTC", 0, 3))
+			return pos + 3 == length ? 0 : INVALID;
+		if (s.regionMatches(true, pos, "UT", 0, 2))
+			return pos + 2 == length ? 0 : INVALID;
+		if (s.regionMatches(true, pos, "Z", 0, 1))
+			return pos + 1 == length ? 0 : INVALID;
+		if (pos + 3 == length && (s.charAt(pos + 2) == 'T' || s.charAt(pos + 2) == 't')) {
+			// North American zones of RFC 822
+			final int base;
+			switch (Character.toUpperCase(s.charAt(pos))) {
+				case 'E': base = -5; break;
+				case 'C': base = -6; break;
+				case 'M': base = -7; break;
+				case 'P': base = -8; break;
+				default: return INVALID;
+			}
+			switch (Character.toUpperCase(s.charAt(pos + 1))) {
+				case 'S': return base * 60;
+				case 'D': return (base + 1) * 60;
+				default: return INVALID;
+			}
+		}
+		return INVALID;
+	}
+
+	// returns -1 unless there are two digits
+	private static int readTwoDigits(String s, int pos) {
+		if (pos + 2 > s.length())
+			return -1;
+		final char high = s.charAt(pos);
+		final char low = s.charAt(pos + 1);
+		if (high < '0' || high > '9' || low < '0' || low > '9')
+			return -1;
+		return (high - '0') * 10 + (low - '0');
+	}
+
+	// reads up to count digits, returns -1 if there is none
+	private static long readNumber(String s, int pos, int count) {
+		long value = -1;
+		final int end = Math.min(s.length(), pos + count);
+		for (int i = pos; i < end; i++) {
+			final char c = s.charAt(i);
+			if (c < '0' || c > '9')
+				break;
+			value = (value < 0 ? 0 : value * 10) + (c - '0');
+		}
+		return value;
+	}
+
+	private static int skipDigits(String s, int pos) {
+		while (pos < s.length() && s.charAt(pos) >= '0' && s.charAt(pos) <= '9')
+			pos++;
+		return pos;
+	}
+
+	private static int skipSpaces(String s, int pos) {
+		while (pos < s.length() && s.charAt(pos) == ' ')
+			pos++;
+		return pos;
+	}
+
+	private static int daysInMonth(int year, int month) {
+		if (month == 2)
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+	}
+
+	// days since 1970-01-01 in the proleptic Gregorian calendar
+	private static long daysFromCivil(int year, int month, int day) {
+		if (month <= 2)
+			year--;
+		final long era = (year >= 0 ? year : year - 399) / 400;
+		final long yearOfEra = year - era * 400;
+		final long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+}
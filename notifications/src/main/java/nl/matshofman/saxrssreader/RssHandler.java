@@ -16,17 +16,61 @@
 
 package nl.matshofman.saxrssreader;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 public class RssHandler extends DefaultHandler {
-	
+
+	private static final int TITLE = 1;
+	private static final int LINK = 2;
+	private static final int DESCRIPTION = 3;
+	private static final int LANGUAGE = 4;
+	private static final int PUB_DATE = 5;
+	private static final int CONTENT = 6;
+	private static final int GUID = 7;
+
+	// Elements we know a setter for, everything else is skipped without any work
+	private static final Map<String, Integer> FEED_ELEMENTS = new HashMap<String, Integer>();
+	private static final Map<String, Integer> ITEM_ELEMENTS = new HashMap<String, Integer>();
+
+	static {
+		FEED_ELEMENTS.put("title", TITLE);
+		FEED_ELEMENTS.put("link", LINK);
+		FEED_ELEMENTS.put("description", DESCRIPTION);
+		FEED_ELEMENTS.put("language", LANGUAGE);
+
+		ITEM_ELEMENTS.put("title", TITLE);
+		ITEM_ELEMENTS.put("link", LINK);
+		ITEM_ELEMENTS.put("guid", GUID);
+		ITEM_ELEMENTS.put("pubDate", PUB_DATE);
+		ITEM_ELEMENTS.put("description", DESCRIPTION);
+		ITEM_ELEMENTS.put("content", CONTENT);
+		ITEM_ELEMENTS.put("content:encoded", CONTENT);
+	}
+
+	private final RssReader.StopCondition stopCondition;
+	private final RssReader.ItemCallback itemCallback;
 	private RssFeed rssFeed;
 	private RssItem rssItem;
-	private StringBuilder stringBuilder;
+	private boolean stopped;
+	private final StringBuilder stringBuilder = new StringBuilder();
+
+	public RssHandler() {
+		this(null, null);
+	}
+
+	/**
+	 * @param stopCondition ends the parsing at the first item it matches, that item is not part of the result
+	 * @param itemCallback gets every item of the result as soon as it is complete
+	 */
+	public RssHandler(RssReader.StopCondition stopCondition, RssReader.ItemCallback itemCallback) {
+		this.stopCondition = stopCondition;
+		this.itemCallback = itemCallback;
+	}
 
 	@Override
 	public void startDocument() {
@@ -41,14 +85,20 @@ public class RssHandler extends DefaultHandler {
 		return rssFeed;
 	}
 
+	/**
+	 * @return true if the stop condition ended the parsing before the end of the document
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
 	@Override
 	public void startElement(String uri, String localName, String qName, Attributes attributes) {
-		stringBuilder = new StringBuilder();
+		stringBuilder.setLength(0);
 		
 		if(qName.equals("item") && rssFeed != null) {
 			rssItem = new RssItem();
 			rssItem.setFeed(rssFeed);
-			rssFeed.addRssItem(rssItem);
 		}
 	}
 
@@ -58,38 +108,66 @@ public class RssHandler extends DefaultHandler {
 	}
 	
 	@Override
-	public void endElement(String uri, String localName, String qName) {
+	public void endElement(String uri, String localName, String qName) throws SAXException {
 		
+		if (rssItem != null && qName.equals("item")) {
+			// The item is complete, add it or stop here
+			if (stopCondition != null && stopCondition.shouldStop(rssItem)) {
+				stopped = true;
+				throw new SAXException("Stop condition reached");
+			}
+			rssFeed.addRssItem(rssItem);
+			if (itemCallback != null)
+				itemCallback.onItem(rssItem);
+			return;
+		}
+
 		if(rssFeed != null && rssItem == null) {
 			// Parse feed properties
-			
-			try {
-				if (qName != null && qName.length() > 0) {
-				    String methodName = "set" + qName.substring(0, 1).toUpperCase() + qName.substring(1);
-				    Method method = rssFeed.getClass().getMethod(methodName, String.class);
-				    method.invoke(rssFeed, stringBuilder.toString());
-				}
-			} catch (SecurityException e) {
-			} catch (NoSuchMethodException e) {
-			} catch (IllegalArgumentException e) {
-			} catch (IllegalAccessException e) {
-			} catch (InvocationTargetException e) {
+			Integer element = FEED_ELEMENTS.get(qName);
+			if (element == null)
+				return;
+
+			switch (element) {
+				case TITLE:
+					rssFeed.setTitle(stringBuilder.toString());
+					break;
+				case LINK:
+					rssFeed.setLink(stringBuilder.toString());
+					break;
+				case DESCRIPTION:
+					rssFeed.setDescription(stringBuilder.toString());
+					break;
+				case LANGUAGE:
+					rssFeed.setLanguage(stringBuilder.toString());
+					break;
 			}
 			
 		} else if (rssItem != null) {
 			// Parse item properties
-			
-			try {
-				if(qName.equals("content:encoded")) 
-					qName = "content";
-				String methodName = "set" + qName.substring(0, 1).toUpperCase() + qName.substring(1);
-				Method method = rssItem.getClass().getMethod(methodName, String.class);
-				method.invoke(rssItem, stringBuilder.toString());
-			} catch (SecurityException e) {
-			} catch (NoSuchMethodException e) {
-			} catch (IllegalArgumentException e) {
-			} catch (IllegalAccessException e) {
-			} catch (InvocationTargetException e) {
+			Integer element = ITEM_ELEMENTS.get(qName);
+			if (element == null)
+				return;
+
+			switch (element) {
+				case TITLE:
+					rssItem.setTitle(stringBuilder.toString());
+					break;
+				case LINK:
+					rssItem.setLink(stringBuilder.toString());
+					break;
+				case GUID:
+					rssItem.setGuid(stringBuilder.toString());
+					break;
+				case PUB_DATE:
+					rssItem.setPubDate(stringBuilder.toString());
+					break;
+				case DESCRIPTION:
+					rssItem.setDescription(stringBuilder.toString());
+					break;
+				case CONTENT:
+					rssItem.setContent(stringBuilder.toString());
+					break;
 			}
 		}
 		
@@ -16,10 +16,7 @@
 
 package nl.matshofman.saxrssreader;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
 
 import android.os.Bundle;
 import android.os.Parcel;
@@ -30,7 +27,9 @@ public class RssItem implements Comparable<RssItem>, Parcelable {
 	private RssFeed feed;
 	private String title;
 	private String link;
+	private String guid;
 	private Date pubDate;
+	private long pubDateMillis = Rfc822DateParser.INVALID;
 	private String description;
 	private String content;
 
@@ -43,7 +42,8 @@ public class RssItem implements Comparable<RssItem>, Parcelable {
 		Bundle data = source.readBundle();
 		title = data.getString("title");
 		link = data.getString("link");
-		pubDate = (Date) data.getSerializable("pubDate");
+		guid = data.getString("guid");
+		setPubDate((Date) data.getSerializable("pubDate"));
 		description = data.getString("description");
 		content = data.getString("content");
 		feed = data.getParcelable("feed");
@@ -56,6 +56,7 @@ public class RssItem implements Comparable<RssItem>, Parcelable {
 		Bundle data = new Bundle();
 		data.putString("title", title);
 		data.putString("link", link);
+		data.putString("guid", guid);
 		data.putSerializable("pubDate", pubDate);
 		data.putString("description", description);
 		data.putString("content", content);
@@ -101,20 +102,35 @@ public class RssItem implements Comparable<RssItem>, Parcelable {
 		this.link = link;
 	}
 
+	public String getGuid() {
+		return guid;
+	}
+
+	public void setGuid(String guid) {
+		this.guid = guid;
+	}
+
 	public Date getPubDate() {
 		return pubDate;
 	}
 
+	/**
+	 * @return the pubDate in milliseconds since the epoch or {@link Rfc822DateParser#INVALID}
+	 */
+	public long getPubDateMillis() {
+		return pubDateMillis;
+	}
+
 	public void setPubDate(Date pubDate) {
 		this.pubDate = pubDate;
+		this.pubDateMillis = pubDate != null ? pubDate.getTime() : Rfc822DateParser.INVALID;
 	}
 
 	public void setPubDate(String pubDate) {
-		try {
-			SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
-			this.pubDate = dateFormat.parse(pubDate);
-		} catch (ParseException e) {
-			e.printStackTrace();
+		final long millis = Rfc822DateParser.parse(pubDate);
+		if (millis != Rfc822DateParser.INVALID) {
+			this.pubDate = new Date(millis);
+			this.pubDateMillis = millis;
 		}
 	}
 
@@ -136,8 +152,8 @@ public class RssItem implements Comparable<RssItem>, Parcelable {
 
 	@Override
 	public int compareTo(RssItem another) {
-		if(getPubDate() != null && another.getPubDate() != null) {
-			return getPubDate().compareTo(another.getPubDate());
+		if(pubDateMillis != Rfc822DateParser.INVALID && another.pubDateMillis != Rfc822DateParser.INVALID) {
+			return pubDateMillis < another.pubDateMillis ? -1 : (pubDateMillis == another.pubDateMillis ? 0 : 1);
 		} else { 
 			return 0;
 		}
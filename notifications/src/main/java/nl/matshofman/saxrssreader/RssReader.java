@@ -19,7 +19,9 @@ package nl.matshofman.saxrssreader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -31,20 +33,97 @@ import org.xml.sax.XMLReader;
 
 public class RssReader {
 
+    /**
+     * Decides where an incremental read ends, usually at the first item that was seen before.
+     */
+    public interface StopCondition {
+        boolean shouldStop(RssItem item);
+    }
+
+    /**
+     * Receives the items of an incremental read one by one, while the rest of the feed is still being parsed.
+     */
+    public interface ItemCallback {
+        void onItem(RssItem item);
+    }
+
+    /**
+     * Opens the connections of the readers which take a URL, e.g. to share the connection pool of an embedded HTTP
+     * client with the rest of the app.
+     */
+    public interface ConnectionFactory {
+        URLConnection openConnection(URL url) throws IOException;
+    }
+
+    private static volatile ConnectionFactory connectionFactory;
+
+    /**
+     * @param factory the factory to open connections with, or null for {@link URL#openConnection()}
+     */
+    public static void setConnectionFactory(ConnectionFactory factory) {
+        connectionFactory = factory;
+    }
+
     public static RssFeed read(URL url) throws SAXException, IOException {
 
-        return read(url.openStream());
+        return read(url, null, null);
+
+    }
+
+    /**
+     * Reads the feed only up to the first item matching the stop condition. The connection is closed right
+     * there, so the rest of the feed is never downloaded.
+     *
+     * @param callback may be null
+     * @return the feed with the items before the stop condition matched
+     */
+    public static RssFeed read(URL url, StopCondition stopCondition, ItemCallback callback)
+            throws SAXException, IOException {
+
+        final ConnectionFactory factory = connectionFactory;
+        URLConnection connection = factory != null ? factory.openConnection(url) : url.openConnection();
+        InputStream stream = null;
+        boolean complete = false;
+        try {
+            stream = connection.getInputStream();
+            RssFeed feed = read(stream, stopCondition, callback);
+            complete = isAtEnd(stream);
+            return feed;
+        } finally {
+            if (stream != null)
+                stream.close();
+            // a connection whose response was read to the end goes back to the keep-alive pool once its
+            // stream is closed, disconnecting would close the socket
+            if (!complete && connection instanceof HttpURLConnection)
+                ((HttpURLConnection) connection).disconnect();
+        }
 
     }
 
+    // the parser may have stopped early or closed the stream itself
+    private static boolean isAtEnd(InputStream stream) {
+        try {
+            return stream.read() == -1;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     public static RssFeed read(InputStream stream) throws SAXException, IOException {
 
+        return read(stream, null, null);
+
+    }
+
+    public static RssFeed read(InputStream stream, StopCondition stopCondition, ItemCallback callback)
+            throws SAXException, IOException {
+
+        RssHandler handler = new RssHandler(stopCondition, callback);
         try {
 
             SAXParserFactory factory = SAXParserFactory.newInstance();
             SAXParser parser = factory.newSAXParser();
             XMLReader reader = parser.getXMLReader();
-            RssHandler handler = new RssHandler();
             InputSource input = new InputSource(stream);
 
             reader.setContentHandler(handler);
@@ -54,6 +133,11 @@ public class RssReader {
 
         } catch (ParserConfigurationException e) {
             throw new SAXException();
+        } catch (SAXException e) {
+            // the handler aborts the parsing this way once the stop condition matched
+            if (handler.isStopped())
+                return handler.getResult();
+            throw e;
         }
 
     }
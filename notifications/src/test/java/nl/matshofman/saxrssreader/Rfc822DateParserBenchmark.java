@@ -0,0 +1,95 @@
+package nl.matshofman.saxrssreader;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares Rfc822DateParser with a new SimpleDateFormat per date, which is what RssItem.setPubDate used to do,
+ * on the pubDates of the notifications fixture. Prints the time and the allocated bytes per date of both.
+ * <p>
+ * Not a test, run its main method on the JVM, e.g. from the IDE.
+ */
+public class Rfc822DateParserBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5000;
+	private static final int ROUNDS = 20000;
+
+	private interface Parser {
+		long parse(String date) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] dates = readPubDates();
+
+		run("Rfc822DateParser", dates, new Parser() {
+			@Override
+			public long parse(String date) {
+				return Rfc822DateParser.parse(date);
+			}
+		});
+		run("SimpleDateFormat per date", dates, new Parser() {
+			@Override
+			public long parse(String date) throws Exception {
+				return new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH).parse(date).getTime();
+			}
+		});
+	}
+
+	private static void run(String name, String[] dates, Parser parser) throws Exception {
+		long sum = 0;
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			for (String date : dates)
+				sum += parser.parse(date);
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long allocatedBefore = allocatedBytes(threads);
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			for (String date : dates)
+				sum += parser.parse(date);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes(threads) - allocatedBefore;
+
+		long count = (long) ROUNDS * dates.length;
+		System.out.println(String.format("%s: %d ns/date%s (checksum %d)", name, elapsed / count,
+				allocatedBefore >= 0 ? String.format(", %d bytes/date", allocated / count) : "", sum));
+	}
+
+	private static String[] readPubDates() throws Exception {
+		InputStream stream = Rfc822DateParserBenchmark.class.getResourceAsStream(RssHandlerTest.FIXTURE);
+		StringBuilder feed = new StringBuilder();
+		try {
+			Reader reader = new InputStreamReader(stream, "UTF-8");
+			char[] buffer = new char[8192];
+			int read;
+			while ((read = reader.read(buffer)) != -1)
+				feed.append(buffer, 0, read);
+		} finally {
+			stream.close();
+		}
+
+		List<String> dates = new ArrayList<String>();
+		Matcher matcher = Pattern.compile("<pubDate>([^<]*)</pubDate>").matcher(feed);
+		while (matcher.find())
+			dates.add(matcher.group(1));
+		return dates.toArray(new String[dates.size()]);
+	}
+
+	// -1 if the JVM can't count the allocations of a thread
+	private static long allocatedBytes(ThreadMXBean threads) {
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,164 @@
+package nl.matshofman.saxrssreader;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Rfc822DateParserTest {
+
+	// 2016-05-16 17:04:12 UTC
+	private static final long MAY_16 = utc(2016, Calendar.MAY, 16, 17, 4, 12);
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private static long utc(int year, int month, int day, int hour, int minute, int second) {
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		calendar.clear();
+		calendar.set(year, month, day, hour, minute, second);
+		return calendar.getTimeInMillis();
+	}
+
+	// what RssItem did before the parser existed
+	private static long parseWithSimpleDateFormat(String date) throws Exception {
+		return new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH).parse(date).getTime();
+	}
+
+	@Test
+	public void parsesRealPubDates() throws Exception {
+		String[] dates = {
+				"Mon, 16 May 2016 18:04:12 +0100",
+				"Tue, 10 Jun 2003 04:00:00 GMT",
+				"Sat, 07 Sep 2002 00:00:01 GMT",
+				"Wed, 29 Feb 2012 23:59:59 -0800",
+				"Thu, 31 Dec 2015 22:30:00 +0530",
+				"Fri, 01 Jan 2016 00:00:00 +0000",
+		};
+		for (String date : dates)
+			assertEquals(date, parseWithSimpleDateFormat(date), Rfc822DateParser.parse(date));
+	}
+
+	@Test
+	public void dayOfWeekIsOptionalAndNotChecked() {
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 GMT"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("16 May 2016 17:04:12 GMT"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon 16 May 2016 17:04:12 GMT"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("Monday, 16 May 2016 17:04:12 GMT"));
+		// RSS feeds get this wrong often enough, the date wins
+		assertEquals(MAY_16, Rfc822DateParser.parse("Sun, 16 May 2016 17:04:12 GMT"));
+	}
+
+	@Test
+	public void parsesOneAndTwoDigitDays() {
+		assertEquals(utc(2016, Calendar.MAY, 6, 17, 4, 12), Rfc822DateParser.parse("Fri, 6 May 2016 17:04:12 GMT"));
+		assertEquals(utc(2016, Calendar.MAY, 6, 17, 4, 12), Rfc822DateParser.parse("Fri, 06 May 2016 17:04:12 GMT"));
+	}
+
+	@Test
+	public void parsesTwoAndFourDigitYears() {
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 May 16 17:04:12 GMT"));
+		assertEquals(utc(1999, Calendar.DECEMBER, 31, 12, 0, 0), Rfc822DateParser.parse("31 Dec 99 12:00:00 GMT"));
+		assertEquals(utc(2049, Calendar.JANUARY, 1, 12, 0, 0), Rfc822DateParser.parse("1 Jan 49 12:00:00 GMT"));
+		assertEquals(utc(1950, Calendar.JANUARY, 1, 12, 0, 0), Rfc822DateParser.parse("1 Jan 50 12:00:00 GMT"));
+		assertEquals(utc(1950, Calendar.JANUARY, 1, 12, 0, 0), Rfc822DateParser.parse("1 Jan 1950 12:00:00 GMT"));
+	}
+
+	@Test
+	public void secondsAreOptional() {
+		assertEquals(MAY_16 - 12000, Rfc822DateParser.parse("Mon, 16 May 2016 17:04 GMT"));
+	}
+
+	@Test
+	public void monthsAreCaseInsensitive() {
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 MAY 2016 17:04:12 GMT"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 may 2016 17:04:12 GMT"));
+	}
+
+	@Test
+	public void parsesNumericZones() {
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 +0000"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 -0000"));
+		assertEquals(MAY_16 - HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 +0100"));
+		assertEquals(MAY_16 + 7 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 -0700"));
+		assertEquals(MAY_16 - 5 * HOUR - 30 * 60000, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 +0530"));
+	}
+
+	@Test
+	public void parsesUniversalZones() {
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 GMT"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 UT"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 UTC"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 Z"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 gmt"));
+	}
+
+	@Test
+	public void parsesNorthAmericanZones() {
+		assertEquals(MAY_16 + 5 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 EST"));
+		assertEquals(MAY_16 + 4 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 EDT"));
+		assertEquals(MAY_16 + 6 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 CST"));
+		assertEquals(MAY_16 + 5 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 CDT"));
+		assertEquals(MAY_16 + 7 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 MST"));
+		assertEquals(MAY_16 + 6 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 MDT"));
+		assertEquals(MAY_16 + 8 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 PST"));
+		assertEquals(MAY_16 + 7 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 PDT"));
+		assertEquals(MAY_16 + 7 * HOUR, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12 pdt"));
+	}
+
+	@Test
+	public void ignoresSurroundingWhitespace() {
+		assertEquals(MAY_16, Rfc822DateParser.parse("\n  Mon, 16 May 2016 17:04:12 GMT \n"));
+		assertEquals(MAY_16, Rfc822DateParser.parse("Mon,  16  May  2016  17:04:12  GMT"));
+	}
+
+	@Test
+	public void fallsBackForOtherZones() throws Exception {
+		String date = "Mon, 16 May 2016 18:04:12 GMT+01:00";
+		assertEquals(MAY_16, Rfc822DateParser.parse(date));
+		assertEquals(parseWithSimpleDateFormat(date), Rfc822DateParser.parse(date));
+	}
+
+	@Test
+	public void fallsBackLenientlyForOutOfRangeFields() throws Exception {
+		// SimpleDateFormat rolls these over instead of failing
+		String[] dates = {
+				"Tue, 31 Apr 2016 10:00:00 GMT",
+				"Mon, 29 Feb 2016 24:00:00 GMT",
+				"Mon, 100 May 2016 17:04:12 GMT",
+				"Mon, 16 May 2016 17:60:00 GMT",
+		};
+		for (String date : dates)
+			assertEquals(date, parseWithSimpleDateFormat(date), Rfc822DateParser.parse(date));
+		assertEquals(utc(2016, Calendar.MAY, 1, 10, 0, 0), Rfc822DateParser.parse("Tue, 31 Apr 2016 10:00:00 GMT"));
+	}
+
+	@Test
+	public void threeDigitDaysAreNotTruncated() {
+		assertNotEquals(utc(2016, Calendar.MAY, 10, 17, 4, 12),
+				Rfc822DateParser.parse("Mon, 100 May 2016 17:04:12 GMT"));
+	}
+
+	@Test
+	public void returnsInvalidForGarbage() {
+		assertEquals(Rfc822DateParser.INVALID, Rfc822DateParser.parse(null));
+		assertEquals(Rfc822DateParser.INVALID, Rfc822DateParser.parse(""));
+		assertEquals(Rfc822DateParser.INVALID, Rfc822DateParser.parse("yesterday"));
+		assertEquals(Rfc822DateParser.INVALID, Rfc822DateParser.parse("2016-05-16T17:04:12Z"));
+		assertEquals(Rfc822DateParser.INVALID, Rfc822DateParser.parse("Mon, 16 Foo 2016 17:04:12 GMT"));
+		assertEquals(Rfc822DateParser.INVALID, Rfc822DateParser.parse("Mon, 16 May 2016 17:04:12"));
+	}
+
+	@Test
+	public void rssItemKeepsTheParsedMillis() {
+		RssItem item = new RssItem();
+		item.setPubDate("Mon, 16 May 2016 17:04:12 GMT");
+		assertEquals(MAY_16, item.getPubDateMillis());
+		assertEquals(MAY_16, item.getPubDate().getTime());
+
+		item.setPubDate("not a date");
+		assertEquals(MAY_16, item.getPubDateMillis());
+	}
+}
@@ -0,0 +1,67 @@
+package nl.matshofman.saxrssreader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Parses the notifications fixture over and over and prints the parse time and the allocated bytes per item.
+ * The feed is read into memory first, so only the XML parser and the RssHandler are measured.
+ * <p>
+ * Not a test, run its main method on the JVM, e.g. from the IDE. The allocations are only reported on JVMs
+ * whose ThreadMXBean can count them.
+ */
+public class RssHandlerBenchmark {
+
+	private static final int WARMUP_ROUNDS = 2000;
+	private static final int ROUNDS = 5000;
+
+	public static void main(String[] args) throws Exception {
+		byte[] feed = readFixture();
+
+		int items = 0;
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			items += parse(feed);
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long allocatedBefore = allocatedBytes(threads);
+		long start = System.nanoTime();
+		items = 0;
+		for (int i = 0; i < ROUNDS; i++)
+			items += parse(feed);
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes(threads) - allocatedBefore;
+
+		System.out.println(String.format("%d rounds of %d items: %d ns/item, %d ns/feed",
+				ROUNDS, items / ROUNDS, elapsed / items, elapsed / ROUNDS));
+		if (allocatedBefore >= 0)
+			System.out.println(String.format("allocated: %d bytes/item", allocated / items));
+	}
+
+	private static int parse(byte[] feed) throws Exception {
+		return RssReader.read(new ByteArrayInputStream(feed)).getRssItems().size();
+	}
+
+	private static byte[] readFixture() throws Exception {
+		InputStream stream = RssHandlerBenchmark.class.getResourceAsStream(RssHandlerTest.FIXTURE);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = stream.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return out.toByteArray();
+		} finally {
+			stream.close();
+		}
+	}
+
+	// -1 if the JVM can't count the allocations of a thread
+	private static long allocatedBytes(ThreadMXBean threads) {
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
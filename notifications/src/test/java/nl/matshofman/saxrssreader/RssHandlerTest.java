@@ -0,0 +1,131 @@
+package nl.matshofman.saxrssreader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import static org.junit.Assert.*;
+
+public class RssHandlerTest {
+
+	static final String FIXTURE = "notifications.rss";
+	static final int FIXTURE_ITEMS = 40;
+
+	static InputStream openFixture() {
+		InputStream stream = RssHandlerTest.class.getResourceAsStream(FIXTURE);
+		assertNotNull("missing test resource " + FIXTURE, stream);
+		return stream;
+	}
+
+	private static RssFeed readFixture(RssReader.StopCondition stopCondition, RssReader.ItemCallback callback)
+			throws SAXException, IOException {
+		InputStream stream = openFixture();
+		try {
+			return RssReader.read(stream, stopCondition, callback);
+		} finally {
+			stream.close();
+		}
+	}
+
+	@Test
+	public void readsChannel() throws Exception {
+		RssFeed feed = readFixture(null, null);
+
+		assertEquals("Jan Folio's Facebook Notifications", feed.getTitle());
+		assertEquals("https://www.facebook.com/", feed.getLink());
+		assertEquals("Jan Folio's Facebook Notifications", feed.getDescription());
+		assertEquals("en-us", feed.getLanguage());
+		assertEquals(FIXTURE_ITEMS, feed.getRssItems().size());
+	}
+
+	@Test
+	public void readsItem() throws Exception {
+		RssItem item = readFixture(null, null).getRssItems().get(0);
+
+		assertEquals("Eva Mulder commented on your photo.", item.getTitle());
+		assertEquals("https://www.facebook.com/photo.php?fbid=205980619624491&set=a.492655486&type=3", item.getLink());
+		assertEquals("notif_492655486_205980619624491", item.getGuid());
+		assertEquals("<a href=\"https://www.facebook.com/eva.mulder\" id=\"notif_0\">Eva Mulder</a> "
+				+ "commented on your photo.", item.getDescription());
+		assertNull(item.getContent());
+
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT+01:00"));
+		calendar.clear();
+		calendar.set(2016, Calendar.MAY, 16, 16, 39, 3);
+		assertEquals(calendar.getTimeInMillis(), item.getPubDateMillis());
+		assertEquals(calendar.getTimeInMillis(), item.getPubDate().getTime());
+	}
+
+	@Test
+	public void itemsHaveAllPropertiesAndDescendingDates() throws Exception {
+		List<RssItem> items = readFixture(null, null).getRssItems();
+
+		for (int i = 0; i < items.size(); i++) {
+			RssItem item = items.get(i);
+			assertNotNull(item.getTitle());
+			assertTrue(item.getLink().startsWith("https://www.facebook.com/"));
+			assertTrue(item.getGuid().startsWith("notif_"));
+			assertNotEquals(Rfc822DateParser.INVALID, item.getPubDateMillis());
+			if (i > 0)
+				assertTrue(item.compareTo(items.get(i - 1)) < 0);
+		}
+	}
+
+	@Test
+	public void unknownElementsDoNotOverwriteProperties() throws Exception {
+		RssItem item = RssReader.read("<rss><channel><title>Feed</title><generator>Generator</generator>"
+				+ "<item><title>Title</title><author>Author</author><dc:creator>Creator</dc:creator>"
+				+ "<category>Category</category></item></channel></rss>").getRssItems().get(0);
+
+		assertEquals("Title", item.getTitle());
+		assertEquals("Feed", item.getFeed().getTitle());
+	}
+
+	@Test
+	public void textOfOneElementDoesNotLeakIntoTheNext() throws Exception {
+		RssItem item = RssReader.read("<rss><channel><item><title>Title</title><link/>"
+				+ "<guid>Guid</guid></item></channel></rss>").getRssItems().get(0);
+
+		assertEquals("Title", item.getTitle());
+		assertEquals("", item.getLink());
+		assertEquals("Guid", item.getGuid());
+	}
+
+	@Test
+	public void readsContentEncoded() throws Exception {
+		RssItem item = RssReader.read("<rss><channel><item><content:encoded><![CDATA[<p>Body</p>]]>"
+				+ "</content:encoded></item></channel></rss>").getRssItems().get(0);
+
+		assertEquals("<p>Body</p>", item.getContent());
+	}
+
+	@Test
+	public void stopsBeforeTheMatchingItem() throws Exception {
+		final List<RssItem> reported = new ArrayList<RssItem>();
+		RssFeed feed = readFixture(new RssReader.StopCondition() {
+			@Override
+			public boolean shouldStop(RssItem item) {
+				return reported.size() == 5;
+			}
+		}, new RssReader.ItemCallback() {
+			@Override
+			public void onItem(RssItem item) {
+				reported.add(item);
+			}
+		});
+
+		assertEquals(5, feed.getRssItems().size());
+		assertEquals(feed.getRssItems(), reported);
+	}
+
+	@Test(expected = SAXException.class)
+	public void malformedFeedFails() throws Exception {
+		RssReader.read("<rss><channel><item><title>Title</item></channel></rss>");
+	}
+}